@@ -0,0 +1,86 @@
+package org.ecom.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * Picks the highest BCrypt cost whose hash time on this machine stays within a target.
+ * Each cost step doubles the work, so probing stops at the first cost over target.
+ * <p>
+ * The result must be the same on every node: logins rehash stored passwords up to the current cost,
+ * so nodes with different costs would ratchet every hash up to the highest one. {@link #deploymentCost}
+ * therefore calibrates once per deployment and shares the result in Redis under {@link #COST_KEY}.
+ */
+@Slf4j
+final class BCryptCostCalibrator {
+
+    static final String COST_KEY = "auth:bcrypt:cost";
+
+    private static final String SAMPLE_PASSWORD = "calibration-Password1!";
+
+    private BCryptCostCalibrator() {
+    }
+
+    /**
+     * The cost stored for this deployment; the first node to start calibrates and stores it. Delete
+     * the key (or set a fixed strength) to recalibrate. Without Redis every node falls back to
+     * {@code minStrength}, which at least agrees across nodes.
+     */
+    static int deploymentCost(StringRedisTemplate redisTemplate, long targetMs, int minStrength, int maxStrength) {
+        try {
+            Integer stored = parse(redisTemplate.opsForValue().get(COST_KEY), minStrength, maxStrength);
+            if (stored != null) {
+                log.info("Using deployment BCrypt cost {}", stored);
+                return stored;
+            }
+            int calibrated = calibrate(targetMs, minStrength, maxStrength);
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(COST_KEY, Integer.toString(calibrated)))) {
+                return calibrated;
+            }
+            // Another node stored its result first; use that one.
+            Integer winner = parse(redisTemplate.opsForValue().get(COST_KEY), minStrength, maxStrength);
+            return winner != null ? winner : calibrated;
+        } catch (DataAccessException e) {
+            log.warn("Could not read the shared BCrypt cost, using minimum {}: {}", minStrength, e.getMessage());
+            return minStrength;
+        }
+    }
+
+    private static Integer parse(String value, int minStrength, int maxStrength) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Math.min(Math.max(Integer.parseInt(value.trim()), minStrength), maxStrength);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed shared BCrypt cost '{}'", value);
+            return null;
+        }
+    }
+
+    static int calibrate(long targetMs, int minStrength, int maxStrength) {
+        // First hash pays for class loading and JIT; keep it out of the measurement.
+        BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(4));
+
+        int chosen = minStrength;
+        for (int strength = minStrength; strength <= maxStrength; strength++) {
+            long elapsedMs = measure(strength);
+            log.debug("BCrypt cost {} took {} ms", strength, elapsedMs);
+            if (elapsedMs > targetMs) {
+                break;
+            }
+            chosen = strength;
+        }
+        log.info("Calibrated BCrypt cost {} for target {} ms", chosen, targetMs);
+        return chosen;
+    }
+
+    private static long measure(int strength) {
+        String salt = BCrypt.gensalt(strength);
+        long start = System.nanoTime();
+        BCrypt.hashpw(SAMPLE_PASSWORD, salt);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,92 @@
+package org.ecom.config;
+
+import org.ecom.exception.BusinessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a CPU-heavy {@link PasswordEncoder} on a dedicated, bounded executor.
+ * <p>
+ * At most {@code threads} hashes run at once, so a login burst cannot occupy every CPU that request
+ * threads need. When the executor queue is full, or a queued hash does not finish within the timeout,
+ * the call fails fast with 503 instead of piling up behind the burst.
+ * <p>
+ * On timeout the task is cancelled with {@code cancel(true)}, which only drops it if it is still
+ * queued: BCrypt does not check for interrupts, so a hash that already started runs to completion
+ * and holds its thread until then.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, AutoCloseable {
+
+    private static final String BUSY_MESSAGE = "Authentication service is busy. Try again later.";
+
+    private final PasswordEncoder delegate;
+    private final ExecutorService executor;
+    private final long timeoutMs;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, ExecutorService executor, long timeoutMs) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // Only parses the stored hash prefix; no need to offload.
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * The underlying encoder, for callers that bound their own concurrency (bulk import) and must not
+     * compete with logins for this executor.
+     */
+    public PasswordEncoder unbounded() {
+        return delegate;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new BusinessException(BUSY_MESSAGE, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new BusinessException(BUSY_MESSAGE, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusinessException(BUSY_MESSAGE, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+}
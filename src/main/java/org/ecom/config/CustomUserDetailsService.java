@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import org.ecom.model.User;
 import org.ecom.repository.UserRepository;
 import org.ecom.service.RedisAuthService;
+import org.ecom.service.RoleRegistry;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -11,9 +12,10 @@ import org.springframework.stereotype.Service;
 
 @Service
 @RequiredArgsConstructor
-public class CustomUserDetailsService implements UserDetailsService{
+public class CustomUserDetailsService implements UserDetailsService {
     private final UserRepository userRepository;
     private final RedisAuthService redisAuthService;
+    private final RoleRegistry roleRegistry;
     @Override
     public UserDetails loadUserByUsername(String username){
         //check redis first
@@ -28,7 +30,7 @@ public class CustomUserDetailsService implements UserDetailsService{
         UserDetails userDetails = org.springframework.security.core.userdetails.User
                 .withUsername(user.getUsername())
                 .password(password)
-                .roles(user.getRole().getType())
+                .roles(roleRegistry.typeOf(user.getRole()))
                 .build();
         redisAuthService.cacheUserDetails(username, userDetails);
         return userDetails;
@@ -0,0 +1,39 @@
+package org.ecom.config;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import org.ecom.service.CachedKeysGoogleIdTokenVerifier;
+import org.ecom.service.GoogleSigningKeyProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+
+@Configuration
+public class GoogleOAuthConfig {
+
+    // NetHttpTransport is thread-safe; sharing it keeps connections alive between cert fetches.
+    @Bean
+    public HttpTransport googleHttpTransport() {
+        return new NetHttpTransport();
+    }
+
+    @Bean
+    public JsonFactory googleJsonFactory() {
+        return GsonFactory.getDefaultInstance();
+    }
+
+    @Bean
+    public GoogleIdTokenVerifier googleIdTokenVerifier(HttpTransport googleHttpTransport,
+                                                       JsonFactory googleJsonFactory,
+                                                       GoogleSigningKeyProvider keyProvider,
+                                                       @Value("${google.oauth.client-id}") String clientId) {
+        GoogleIdTokenVerifier.Builder builder = new GoogleIdTokenVerifier.Builder(googleHttpTransport, googleJsonFactory)
+                .setAudience(Collections.singletonList(clientId));
+        return new CachedKeysGoogleIdTokenVerifier(builder, keyProvider);
+    }
+}
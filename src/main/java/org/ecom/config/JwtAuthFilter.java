@@ -6,9 +6,13 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.ecom.service.RedisAuthService;
-import org.ecom.util.JwtUtil;
+import org.ecom.service.UserSessionService;
+import org.ecom.util.ParsedToken;
+import org.ecom.util.VerifiedTokenCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -19,28 +23,57 @@ import java.io.IOException;
 @Component
 @RequiredArgsConstructor
 public class JwtAuthFilter extends OncePerRequestFilter {
-    private final JwtUtil jwtUtil;
+    private final VerifiedTokenCache verifiedTokenCache;
     private final CustomUserDetailsService userDetailsService;
     private final RedisAuthService redisAuthService;
+    private final UserSessionService userSessionService;
+    @Value("${app.security.stateless-auth:false}")
+    private boolean statelessAuth;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String header = request.getHeader("Authorization");
         if(header != null && header.startsWith("Bearer ")){
             String token = header.substring(7);
-            if(jwtUtil.validate(token)){
-                String username = jwtUtil.getUsername(token);
-                // Load UserDetails in redis
-                UserDetails userDetails = redisAuthService.getUserDetailsFromCache(username);
-                // Nếu không có trong cache, load từ service (service sẽ tự cache lại)
-                if (userDetails == null) {
-                    userDetails = userDetailsService.loadUserByUsername(username);
+            ParsedToken parsed = verifiedTokenCache.get(token).orElse(null);
+            if(parsed != null && !redisAuthService.isTokenRevoked(parsed.getUsername(), parsed.getIssuedAt())){
+                UserDetails userDetails = statelessAuth ? fromClaims(parsed) : loadUserDetails(parsed.getUsername());
+                if (userDetails != null) {
+                    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                    auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(auth);
+                    touchSession(parsed);
                 }
-                UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(auth);
             }
         }
         filterChain.doFilter(request, response);
     }
+
+    // Buffered in memory and written in batches by SessionTouchBuffer, so this adds no query per request.
+    private void touchSession(ParsedToken parsed) {
+        if (parsed.isAccessToken() && parsed.getSessionId() != null && parsed.getSessionExpiresAt() != null) {
+            userSessionService.touchSession(parsed.getSessionId(), parsed.getSessionExpiresAt());
+        }
+    }
+
+    private UserDetails loadUserDetails(String username) {
+        // Load UserDetails in redis
+        UserDetails userDetails = redisAuthService.getUserDetailsFromCache(username);
+        // Nếu không có trong cache, load từ service (service sẽ tự cache lại)
+        if (userDetails == null) {
+            userDetails = userDetailsService.loadUserByUsername(username);
+        }
+        return userDetails;
+    }
+
+    // Stateless mode: the verified access token is the source of truth, no Redis or database lookup.
+    private UserDetails fromClaims(ParsedToken parsed) {
+        if (!parsed.isAccessToken() || parsed.getUsername() == null || parsed.getRole() == null) {
+            return null;
+        }
+        return User.withUsername(parsed.getUsername())
+                .password("")
+                .roles(parsed.getRole())
+                .build();
+    }
 }
@@ -23,6 +23,12 @@ public class JwtProperties {
 
     private String previousSecrets = "";
 
+    /**
+     * Optional file with one secret per line, current signing secret first; when set it replaces
+     * {@code secret}/{@code previousSecrets} and is re-read on every key reload.
+     */
+    private String keysFile = "";
+
     @NotNull
     @Min(value = 60000, message = "JWT expiration must be at least 60 seconds")
     private Long expirationMs;
@@ -30,4 +36,7 @@ public class JwtProperties {
     @NotNull
     @Min(value = 60000, message = "JWT refresh expiration must be at least 60 seconds")
     private Long refreshExpirationMs;
+
+    @Min(value = 0, message = "Verified token cache size must not be negative")
+    private long verifiedCacheMaxSize = 10000;
 }
@@ -0,0 +1,41 @@
+package org.ecom.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+@Component
+@ConfigurationProperties(prefix = "app.security.password")
+@Validated
+@Getter
+@Setter
+public class PasswordHashingProperties {
+
+    // 0 = one hashing thread per available CPU
+    @Min(value = 0, message = "Hashing thread count must not be negative")
+    private int threads = 0;
+
+    @Min(value = 1, message = "Hashing queue capacity must be at least 1")
+    private int queueCapacity = 64;
+
+    @Min(value = 1, message = "Hashing timeout must be at least 1 ms")
+    private long timeoutMs = 5000;
+
+    // 0 = calibrate once per deployment against targetHashMs (shared through Redis)
+    @Min(value = 0, message = "BCrypt strength must be 0 (auto) or 4-31")
+    @Max(value = 31, message = "BCrypt strength must be 0 (auto) or 4-31")
+    private int bcryptStrength = 0;
+
+    @Min(value = 1, message = "Target hash time must be at least 1 ms")
+    private long targetHashMs = 100;
+
+    @Min(value = 4, message = "Minimum BCrypt strength is 4")
+    private int minStrength = 10;
+
+    @Max(value = 31, message = "Maximum BCrypt strength is 31")
+    private int maxStrength = 14;
+}
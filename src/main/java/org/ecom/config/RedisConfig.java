@@ -1,11 +1,20 @@
 package org.ecom.config;
 
+import org.ecom.service.RedisAuthService;
+import org.ecom.service.RoleRegistry;
+import org.ecom.util.JwtKeyRing;
+import org.ecom.service.UserExistenceIndex;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.charset.StandardCharsets;
 
 @Configuration
 public class RedisConfig {
@@ -26,4 +35,36 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    @Bean
+    public RedisTemplate<String, UserDetails> userDetailsRedisTemplate(RedisConnectionFactory connectionFactory){
+        RedisTemplate<String, UserDetails> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new UserDetailsRedisSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer authCacheInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                       RedisAuthService redisAuthService,
+                                                                       UserExistenceIndex userExistenceIndex,
+                                                                       RoleRegistry roleRegistry,
+                                                                       JwtKeyRing jwtKeyRing) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> redisAuthService.handleInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisAuthService.INVALIDATION_CHANNEL));
+        // Same subscription connection for the username/email filter updates.
+        container.addMessageListener(
+                (message, pattern) -> userExistenceIndex.handleUpdate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(UserExistenceIndex.UPDATE_CHANNEL));
+        container.addMessageListener((message, pattern) -> roleRegistry.reload(),
+                new ChannelTopic(RoleRegistry.RELOAD_CHANNEL));
+        container.addMessageListener((message, pattern) -> jwtKeyRing.reload(),
+                new ChannelTopic(JwtKeyRing.RELOAD_CHANNEL));
+        return container;
+    }
 }
@@ -1,19 +1,20 @@
 package org.ecom.config;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -23,6 +24,10 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableWebSecurity
@@ -60,6 +65,10 @@ public class SecurityConfig {
                                 "/swagger-ui.html"
                         ).permitAll()
                         // .requestMatchers(HttpMethod.GET, "/user/getUser").hasAnyRole("USER","ADMIN")
+                        .requestMatchers("/user/export", "/api/v1/user/export",
+                                "/user/import/**", "/api/v1/user/import/**",
+                                "/role/**", "/api/v1/role/**",
+                                "/jwt-keys/**", "/api/v1/jwt-keys/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 ).userDetailsService(userDetailsService)
                 .requiresChannel(channel -> {
@@ -77,21 +86,21 @@ public class SecurityConfig {
     }
 
     @Bean
-    public AuthenticationManager authenticationManager(AuthenticationConfiguration config) throws Exception {
-        return config.getAuthenticationManager();
-    }
-
-    @Bean
-    public DaoAuthenticationProvider authProvider(CustomUserDetailsService uds, PasswordEncoder encoder){
-        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
-        provider.setUserDetailsService(uds);
-        provider.setPasswordEncoder(encoder);
-        return provider;
-    }
-
-    @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(PasswordHashingProperties properties, MeterRegistry meterRegistry,
+                                           StringRedisTemplate stringRedisTemplate){
+        int strength = properties.getBcryptStrength() > 0
+                ? properties.getBcryptStrength()
+                : BCryptCostCalibrator.deploymentCost(stringRedisTemplate, properties.getTargetHashMs(),
+                        properties.getMinStrength(), properties.getMaxStrength());
+        int threads = properties.getThreads() > 0
+                ? properties.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, executor, "password.hashing");
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), monitored, properties.getTimeoutMs());
     }
 
     @Bean
@@ -0,0 +1,114 @@
+package org.ecom.config;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link UserDetails} for the Redis auth cache.
+ * <p>
+ * Layout (v2): version byte, flags byte, username, authority count (unsigned varint), authorities.
+ * Strings use {@link DataOutputStream#writeUTF}. The password hash is never written: the cache only
+ * serves the JWT filter, which does not check passwords, so restored users carry an empty password.
+ * Payloads with an unknown version byte (including v1 entries that still held the hash, and JSON
+ * written by older releases) decode to {@code null}, which callers treat as a cache miss.
+ */
+public class UserDetailsRedisSerializer implements RedisSerializer<UserDetails> {
+
+    static final byte VERSION = 2;
+
+    private static final int ENABLED = 1;
+    private static final int ACCOUNT_NON_EXPIRED = 1 << 1;
+    private static final int ACCOUNT_NON_LOCKED = 1 << 2;
+    private static final int CREDENTIALS_NON_EXPIRED = 1 << 3;
+
+    @Override
+    public byte[] serialize(UserDetails user) throws SerializationException {
+        if (user == null) {
+            return null;
+        }
+        Collection<? extends GrantedAuthority> authorities = user.getAuthorities();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeByte(flags(user));
+            out.writeUTF(user.getUsername());
+            writeVarInt(out, authorities.size());
+            for (GrantedAuthority authority : authorities) {
+                out.writeUTF(authority.getAuthority());
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize user details", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public UserDetails deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0 || bytes[0] != VERSION) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+            int flags = in.readUnsignedByte();
+            String username = in.readUTF();
+            int count = readVarInt(in);
+            List<String> authorities = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                authorities.add(in.readUTF());
+            }
+            return User.withUsername(username)
+                    .password("")
+                    .authorities(authorities.toArray(String[]::new))
+                    .disabled((flags & ENABLED) == 0)
+                    .accountExpired((flags & ACCOUNT_NON_EXPIRED) == 0)
+                    .accountLocked((flags & ACCOUNT_NON_LOCKED) == 0)
+                    .credentialsExpired((flags & CREDENTIALS_NON_EXPIRED) == 0)
+                    .build();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot deserialize user details", e);
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return UserDetails.class;
+    }
+
+    private int flags(UserDetails user) {
+        return (user.isEnabled() ? ENABLED : 0)
+                | (user.isAccountNonExpired() ? ACCOUNT_NON_EXPIRED : 0)
+                | (user.isAccountNonLocked() ? ACCOUNT_NON_LOCKED : 0)
+                | (user.isCredentialsNonExpired() ? CREDENTIALS_NON_EXPIRED : 0);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed authority count");
+    }
+}
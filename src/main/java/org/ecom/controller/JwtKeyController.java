@@ -0,0 +1,27 @@
+package org.ecom.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.ecom.response.ApiResponse;
+import org.ecom.util.JwtKeyRing;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping({"/jwt-keys", "/api/v1/jwt-keys"})
+@RequiredArgsConstructor
+@Tag(name = "JWT keys", description = "JWT signing key management APIs")
+public class JwtKeyController {
+
+    private final JwtKeyRing jwtKeyRing;
+
+    @PostMapping("/reload")
+    @Operation(summary = "Reload JWT keys", description = "Re-read the JWT keys file on every node after rotating a secret")
+    public ResponseEntity<ApiResponse<Void>> reload() {
+        jwtKeyRing.requestReload();
+        return ResponseEntity.ok(ApiResponse.okMessage("JWT keys reloaded"));
+    }
+}
@@ -0,0 +1,27 @@
+package org.ecom.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.ecom.response.ApiResponse;
+import org.ecom.service.RoleRegistry;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping({"/role", "/api/v1/role"})
+@RequiredArgsConstructor
+@Tag(name = "Roles", description = "Role management APIs")
+public class RoleController {
+
+    private final RoleRegistry roleRegistry;
+
+    @PostMapping("/reload")
+    @Operation(summary = "Reload roles", description = "Reload the in-memory role registry on every node after editing the role table")
+    public ResponseEntity<ApiResponse<Void>> reload() {
+        roleRegistry.requestReload();
+        return ResponseEntity.ok(ApiResponse.okMessage("Roles reloaded"));
+    }
+}
@@ -1,20 +1,32 @@
 package org.ecom.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.ecom.dto.CursorPageDto;
+import org.ecom.dto.UserImportJobDto;
 import org.ecom.dto.UserResponseDto;
+import org.ecom.dto.UserViewDto;
 import org.ecom.dto.UserRequestDto;
+import org.ecom.exception.BusinessException;
 import org.ecom.mapper.UserMapper;
 import org.ecom.response.ApiResponse;
+import org.ecom.service.UserExportService;
+import org.ecom.service.UserImportService;
 import org.ecom.service.UserService;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+
 @RestController
 @RequestMapping({"/user", "/api/v1/user"})
 @RequiredArgsConstructor
@@ -23,23 +35,97 @@ public class UserController {
 
     private final UserService userService;
     private final UserMapper userMapper;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
 
     @GetMapping
-    @Operation(summary = "List users", description = "Get paginated list of users")
-    public ResponseEntity<ApiResponse<Page<UserResponseDto>>> list(
+    @Operation(summary = "List users",
+            description = "Get paginated list of users; fields=username,role limits the properties")
+    public ResponseEntity<ApiResponse<Page<UserViewDto>>> list(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String fields
+    ) {
+        Page<UserViewDto> users = userService.findAll(page, size, UserService.parseFields(fields));
+        return ResponseEntity.ok(ApiResponse.ok(users));
+    }
+
+    @GetMapping(params = "count=false")
+    @Operation(summary = "List users without total",
+            description = "Same as List users, but skips the total count; the response only says whether a next page exists")
+    public ResponseEntity<ApiResponse<Slice<UserViewDto>>> listWithoutCount(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String fields
+    ) {
+        Slice<UserViewDto> users = userService.findSlice(page, size, UserService.parseFields(fields));
+        return ResponseEntity.ok(ApiResponse.ok(users));
+    }
+
+    @GetMapping("/cursor")
+    @Operation(summary = "List users by cursor",
+            description = "Keyset-paginated list of users ordered by id; pass nextCursor back as after")
+    public ResponseEntity<ApiResponse<CursorPageDto<UserViewDto>>> listByCursor(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean count,
+            @RequestParam(required = false) String fields
     ) {
-        Page<UserResponseDto> users = userService.findAll(PageRequest.of(page, size))
-                .map(userMapper::toDto);
+        CursorPageDto<UserViewDto> users = userService.findAfter(after, size, count,
+                UserService.parseFields(fields));
         return ResponseEntity.ok(ApiResponse.ok(users));
     }
 
+    @GetMapping("/export")
+    @Operation(summary = "Export users", description = "Stream all users as NDJSON (default) or CSV")
+    public void export(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+            throws IOException {
+        UserExportService.Format exportFormat;
+        try {
+            exportFormat = UserExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Unsupported export format", HttpStatus.BAD_REQUEST);
+        }
+        userExportService.export(exportFormat, () -> {
+            response.setContentType(exportFormat.getContentType());
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Disposition",
+                    "attachment; filename=\"users." + exportFormat.name().toLowerCase(Locale.ROOT) + "\"");
+            return response.getOutputStream();
+        });
+    }
+
+    @PostMapping("/import")
+    @Operation(summary = "Import users",
+            description = "Accept a CSV (username,email,password header) or NDJSON request body for import; returns 202 with a job id")
+    public ResponseEntity<ApiResponse<UserImportJobDto>> importUsers(
+            @RequestParam(defaultValue = "csv") String format, HttpServletRequest request) throws IOException {
+        UserImportService.Format importFormat;
+        try {
+            importFormat = UserImportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Unsupported import format", HttpStatus.BAD_REQUEST);
+        }
+        UserImportJobDto job = userImportService.startImport(importFormat, request.getInputStream());
+        ApiResponse<UserImportJobDto> body = ApiResponse.ok(job);
+        body.setCode(HttpStatus.ACCEPTED.value());
+        return ResponseEntity.accepted()
+                .location(URI.create(request.getRequestURI() + "/" + job.getId()))
+                .body(body);
+    }
+
+    @GetMapping("/import/{jobId}")
+    @Operation(summary = "Get import job", description = "Import status, with the per-row error report so far")
+    public ResponseEntity<ApiResponse<UserImportJobDto>> importStatus(@PathVariable String jobId) {
+        return ResponseEntity.ok(ApiResponse.ok(userImportService.getJob(jobId)));
+    }
+
     @GetMapping("/{id}")
-    @Operation(summary = "Get user", description = "Get user details by id")
-    public ResponseEntity<ApiResponse<UserResponseDto>> get(@PathVariable Long id) {
-        return userService.findById(id)
-                .map(user -> ResponseEntity.ok(ApiResponse.ok(userMapper.toDto(user))))
+    @Operation(summary = "Get user", description = "Get user details by id; fields=username,role limits the properties")
+    public ResponseEntity<ApiResponse<UserViewDto>> get(@PathVariable Long id,
+                                                            @RequestParam(required = false) String fields) {
+        return userService.findView(id, UserService.parseFields(fields))
+                .map(user -> ResponseEntity.ok(ApiResponse.ok(user)))
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body(ApiResponse.fail(HttpStatus.NOT_FOUND, "User not found")));
     }
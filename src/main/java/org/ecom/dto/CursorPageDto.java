@@ -0,0 +1,20 @@
+package org.ecom.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One keyset page. {@code nextCursor} is absent on the last page; {@code total} is absent unless
+ * the caller asked for it.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CursorPageDto<T> {
+    private List<T> items;
+    private String nextCursor;
+    private Long total;
+}
@@ -0,0 +1,30 @@
+package org.ecom.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * State of an asynchronous bulk import. {@code report} grows batch by batch while the job runs;
+ * {@code error} is set only when the job failed as a whole (individual bad rows go in the report).
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportJobDto {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String id;
+    private Status status;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+    private UserImportReportDto report;
+}
@@ -0,0 +1,28 @@
+package org.ecom.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * User as returned by the projected read endpoints. Properties not asked for with {@code fields=}
+ * stay null and are left out of the JSON; other endpoints keep {@link UserResponseDto}.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserViewDto {
+    private String username;
+    private String role;
+
+    /**
+     * Properties a read endpoint can be asked for with {@code fields=}.
+     */
+    public enum Field {
+        USERNAME, ROLE
+    }
+}
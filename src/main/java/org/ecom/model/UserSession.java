@@ -13,10 +13,12 @@ import java.time.Instant;
 public class UserSession {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_sessions_id_seq")
+    @SequenceGenerator(name = "user_sessions_id_seq", sequenceName = "user_sessions_id_seq", allocationSize = 50)
     private Long id;
 
-    @Column(name = "session_id", nullable = false, unique = true, length = 64)
+    // Unique together with expires_at (the partition key), see V5 migration.
+    @Column(name = "session_id", nullable = false, length = 64)
     private String sessionId;
 
     @Column(name = "family_id", nullable = false, length = 64)
@@ -2,11 +2,30 @@ package org.ecom.repository;
 
 import org.ecom.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserViewRepository {
     Optional<User> findByUsername(String username);
+
+    // Login needs the role for token issuance; fetch it with the user.
+    @Query("select u from User u join fetch u.role where u.username = :username")
+    Optional<User> findWithRoleByUsername(@Param("username") String username);
     Optional<User> findByGoogleId(String googleId);
     Optional<User> findByEmail(String email);
+
+    // Existence checks select no columns beyond the match, unlike findBy..., and stop at the first row.
+    boolean existsByUsername(String username);
+    boolean existsByEmail(String email);
+
+    // Bulk import checks a whole batch against the table in one query per column.
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
 }
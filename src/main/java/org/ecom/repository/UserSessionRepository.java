@@ -10,21 +10,22 @@ import java.time.Instant;
 import java.util.Optional;
 
 public interface UserSessionRepository extends JpaRepository<UserSession, Long> {
-    Optional<UserSession> findBySessionId(String sessionId);
+    // user_sessions is partitioned by expires_at: passing it lets Postgres prune to one partition.
+    // User and role are fetched in the same statement because the refresh path always reads both.
+    @Query("select s from UserSession s join fetch s.user u join fetch u.role where s.sessionId = :sessionId and s.expiresAt = :expiresAt")
+    Optional<UserSession> findWithUserAndRole(@Param("sessionId") String sessionId, @Param("expiresAt") Instant expiresAt);
 
+    // Already-expired sessions cannot be refreshed, so skipping their partitions is safe.
     @Modifying
-    @Query("update UserSession s set s.revoked = true, s.revokedAt = :now where s.familyId = :familyId and s.revoked = false")
-    int revokeFamily(@Param("familyId") String familyId, @Param("now") Instant now);
-
-    @Modifying
-    @Query("update UserSession s set s.revoked = true, s.revokedAt = :now, s.replacedBySessionId = :replacedBy where s.sessionId = :sessionId and s.revoked = false")
-    int revokeSession(@Param("sessionId") String sessionId, @Param("replacedBy") String replacedBy, @Param("now") Instant now);
+    @Query("update UserSession s set s.revoked = true, s.revokedAt = :now where s.user.id = :userId and s.revoked = false and s.expiresAt >= :now")
+    int revokeUser(@Param("userId") Long userId, @Param("now") Instant now);
 
     @Modifying
-    @Query("update UserSession s set s.lastUsedAt = :now where s.sessionId = :sessionId")
-    int touchSession(@Param("sessionId") String sessionId, @Param("now") Instant now);
+    @Query("update UserSession s set s.revoked = true, s.revokedAt = :now where s.familyId = :familyId and s.revoked = false and s.expiresAt >= :now")
+    int revokeFamily(@Param("familyId") String familyId, @Param("now") Instant now);
 
     @Modifying
-    @Query("delete from UserSession s where s.expiresAt < :now")
-    int deleteExpired(@Param("now") Instant now);
+    @Query("update UserSession s set s.revoked = true, s.revokedAt = :now, s.replacedBySessionId = :replacedBy where s.sessionId = :sessionId and s.expiresAt = :expiresAt and s.revoked = false")
+    int revokeSession(@Param("sessionId") String sessionId, @Param("expiresAt") Instant expiresAt,
+                      @Param("replacedBy") String replacedBy, @Param("now") Instant now);
 }
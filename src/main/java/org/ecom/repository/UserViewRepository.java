@@ -0,0 +1,27 @@
+package org.ecom.repository;
+
+import org.ecom.dto.UserViewDto;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Read-only user queries that select only the requested {@link UserViewDto} columns (the role
+ * type through a join), so no {@code User} entities are loaded or dirty-checked.
+ */
+public interface UserViewRepository {
+
+    Optional<UserViewDto> findViewById(long id, Set<UserViewDto.Field> fields);
+
+    /**
+     * Users with id greater than {@code afterId} in id order, skipping {@code offset} rows.
+     */
+    List<UserView> findViews(long afterId, long offset, int limit, Set<UserViewDto.Field> fields);
+
+    /**
+     * A projected user with its id, which keyset paging needs but the response does not show.
+     */
+    record UserView(long id, UserViewDto user) {
+    }
+}
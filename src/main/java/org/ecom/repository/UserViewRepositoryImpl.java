@@ -0,0 +1,64 @@
+package org.ecom.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import org.ecom.dto.UserViewDto;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// Spring Data picks this up as the UserViewRepository fragment of UserRepository by its Impl suffix.
+class UserViewRepositoryImpl implements UserViewRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<UserViewDto> findViewById(long id, Set<UserViewDto.Field> fields) {
+        return entityManager.createQuery(select(fields) + " where u.id = :id", Tuple.class)
+                .setParameter("id", id)
+                .getResultStream()
+                .findFirst()
+                .map(tuple -> toDto(tuple, fields));
+    }
+
+    @Override
+    public List<UserView> findViews(long afterId, long offset, int limit, Set<UserViewDto.Field> fields) {
+        return entityManager.createQuery(select(fields) + " where u.id > :afterId order by u.id", Tuple.class)
+                .setParameter("afterId", afterId)
+                .setFirstResult(Math.toIntExact(offset))
+                .setMaxResults(limit)
+                .getResultList().stream()
+                .map(tuple -> new UserView(tuple.get("id", Long.class), toDto(tuple, fields)))
+                .toList();
+    }
+
+    // Built only from the Field enum, never from request text; the role join is added only when needed.
+    static String select(Set<UserViewDto.Field> fields) {
+        StringBuilder jpql = new StringBuilder("select u.id as id");
+        if (fields.contains(UserViewDto.Field.USERNAME)) {
+            jpql.append(", u.username as username");
+        }
+        if (fields.contains(UserViewDto.Field.ROLE)) {
+            jpql.append(", r.type as role");
+        }
+        jpql.append(" from User u");
+        if (fields.contains(UserViewDto.Field.ROLE)) {
+            jpql.append(" join u.role r");
+        }
+        return jpql.toString();
+    }
+
+    private static UserViewDto toDto(Tuple tuple, Set<UserViewDto.Field> fields) {
+        UserViewDto dto = new UserViewDto();
+        if (fields.contains(UserViewDto.Field.USERNAME)) {
+            dto.setUsername(tuple.get("username", String.class));
+        }
+        if (fields.contains(UserViewDto.Field.ROLE)) {
+            dto.setRole(tuple.get("role", String.class));
+        }
+        return dto;
+    }
+}
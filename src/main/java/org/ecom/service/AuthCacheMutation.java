@@ -0,0 +1,44 @@
+package org.ecom.service;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of auth cache writes that {@link RedisAuthService#apply} sends to Redis in one round trip.
+ */
+@Getter
+public class AuthCacheMutation {
+    private final List<String> revokedRefreshTokens = new ArrayList<>();
+    private final Map<String, String> cachedRefreshTokens = new LinkedHashMap<>();
+    private final List<String> evictedUsers = new ArrayList<>();
+    private final List<String> revokedUserTokens = new ArrayList<>();
+
+    public AuthCacheMutation revokeRefreshToken(String refreshToken) {
+        revokedRefreshTokens.add(refreshToken);
+        return this;
+    }
+
+    public AuthCacheMutation cacheRefreshToken(String refreshToken, String sessionId) {
+        cachedRefreshTokens.put(refreshToken, sessionId);
+        return this;
+    }
+
+    public AuthCacheMutation evictUserDetails(String username) {
+        evictedUsers.add(username);
+        return this;
+    }
+
+    public AuthCacheMutation revokeUserTokens(String username) {
+        revokedUserTokens.add(username);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return revokedRefreshTokens.isEmpty() && cachedRefreshTokens.isEmpty()
+                && evictedUsers.isEmpty() && revokedUserTokens.isEmpty();
+    }
+}
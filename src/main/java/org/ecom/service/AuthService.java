@@ -10,33 +10,45 @@ import org.ecom.model.User;
 import org.ecom.model.UserSession;
 import org.ecom.repository.UserRepository;
 import org.ecom.util.JwtUtil;
+import org.ecom.util.ParsedToken;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AuthService {
-    private static final String REFRESH_TOKEN_TYPE = "refresh";
-
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
-    private final AuthenticationManager authenticationManager;
+    private final PasswordEncoder passwordEncoder;
     private final RedisAuthService redisAuthService;
     private final GoogleOAuthService googleOAuthService;
     private final UserSessionService userSessionService;
+    private final RefreshSessionStore refreshSessionStore;
+    private final UserDetailsService userDetailsService;
+    private final RoleRegistry roleRegistry;
+
+    /**
+     * Live refresh sessions are kept in Redis and copied to Postgres asynchronously
+     * (see {@link RefreshSessionStore} and {@link SessionEventWriter}).
+     */
+    @Value("${app.security.refresh.redis-sessions:false}")
+    private boolean redisSessions;
 
     @Transactional
     public TokenResponseDto login(LoginRequestDto loginRequest, String clientIp) {
@@ -45,26 +57,42 @@ public class AuthService {
 
     @Transactional
     public TokenResponseDto login(LoginRequestDto loginRequest, String clientIp, String userAgent) {
-        if (redisAuthService.isLoginLocked(loginRequest.getUsername(), clientIp)) {
+        if (!redisAuthService.allowLoginAttempt(clientIp)) {
+            throw new BusinessException("Too many login attempts. Try again later.", HttpStatus.TOO_MANY_REQUESTS);
+        }
+
+        // Pair already seen locked on this node: reject before the user lookup and BCrypt.
+        if (redisAuthService.isLoginLockedLocally(loginRequest.getUsername(), clientIp)) {
             throw new BusinessException("Too many failed attempts. Try again later.", HttpStatus.TOO_MANY_REQUESTS);
         }
 
         log.info("Authenticating username={}", loginRequest.getUsername());
-        User user = userRepository.findByUsername(loginRequest.getUsername())
+        // One lookup serves both the password check and token issuance.
+        User user = userRepository.findWithRoleByUsername(loginRequest.getUsername())
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-        try {
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword())
-            );
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-        } catch (BadCredentialsException e) {
-            redisAuthService.recordFailedLogin(loginRequest.getUsername(), clientIp);
+        String storedHash = user.getPassword();
+        boolean passwordMatches = storedHash != null && passwordEncoder.matches(loginRequest.getPassword(), storedHash);
+
+        // Lock check and failure bookkeeping in a single Redis call; a locked pair is rejected
+        // whether or not the password was right.
+        if (!redisAuthService.registerLoginAttempt(loginRequest.getUsername(), clientIp, passwordMatches)) {
+            throw new BusinessException("Too many failed attempts. Try again later.", HttpStatus.TOO_MANY_REQUESTS);
+        }
+        if (!passwordMatches) {
+            log.debug("Bad credentials for username={}", loginRequest.getUsername());
             throw new BusinessException("Invalid credentials", HttpStatus.BAD_REQUEST);
         }
 
-        redisAuthService.clearFailedLogin(loginRequest.getUsername(), clientIp);
-        return issueSessionTokens(user, clientIp, userAgent, null);
+        // Stored hash uses a lower BCrypt cost than the current one: rehash while we have the raw password.
+        boolean rehashed = passwordEncoder.upgradeEncoding(storedHash);
+        if (rehashed) {
+            user.setPassword(passwordEncoder.encode(loginRequest.getPassword()));
+        }
+
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                user.getUsername(), null, List.of(new SimpleGrantedAuthority("ROLE_" + roleRegistry.typeOf(user.getRole())))));
+        return issueSessionTokens(user, clientIp, userAgent, rehashed);
     }
 
     public TokenResponseDto refreshToken(RefreshTokenRequest request) {
@@ -78,23 +106,39 @@ public class AuthService {
         }
 
         String refreshToken = request.getRefreshToken();
-        if (!jwtUtil.validate(refreshToken) || !REFRESH_TOKEN_TYPE.equals(jwtUtil.getTokenType(refreshToken))) {
+        ParsedToken parsed = jwtUtil.parse(refreshToken)
+                .filter(ParsedToken::isRefreshToken)
+                .orElseThrow(() -> new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST));
+
+        String sessionId = parsed.getSessionId();
+        String username = parsed.getUsername();
+        if (sessionId == null || parsed.getFamilyId() == null || username == null) {
             throw new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST);
         }
 
-        String sessionId = jwtUtil.getSessionId(refreshToken);
-        String familyId = jwtUtil.getFamilyId(refreshToken);
-        String username = jwtUtil.getUsername(refreshToken);
-        if (sessionId == null || familyId == null || username == null) {
-            throw new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST);
+        // Same not-before epoch as access tokens: a refresh token from before a credential change or
+        // reuse detection must not mint new access tokens (which would carry a newer iat).
+        if (redisAuthService.isTokenRevoked(username, parsed.getIssuedAt())) {
+            if (redisSessions) {
+                refreshSessionStore.revokeFamily(parsed.getFamilyId());
+            } else {
+                userSessionService.revokeFamily(parsed.getFamilyId());
+            }
+            throw new BusinessException("Refresh token is revoked", HttpStatus.BAD_REQUEST);
+        }
+
+        if (redisSessions) {
+            return rotateInRedis(parsed, clientIp, userAgent);
         }
 
-        UserSession session = userSessionService.findBySessionId(sessionId)
+        UserSession session = userSessionService.findSession(sessionId, parsed.getExpiration())
                 .orElseThrow(() -> new BusinessException("Refresh session not found", HttpStatus.BAD_REQUEST));
 
         if (session.isRevoked()) {
             userSessionService.revokeFamily(session.getFamilyId());
-            redisAuthService.revokeRefreshToken(refreshToken);
+            redisAuthService.apply(new AuthCacheMutation()
+                    .revokeRefreshToken(refreshToken)
+                    .revokeUserTokens(username));
             throw new BusinessException("Refresh token is revoked", HttpStatus.BAD_REQUEST);
         }
 
@@ -106,39 +150,42 @@ public class AuthService {
 
         if (!userSessionService.isRefreshTokenMatch(session, refreshToken)) {
             userSessionService.revokeFamily(session.getFamilyId());
-            redisAuthService.revokeRefreshToken(refreshToken);
+            redisAuthService.apply(new AuthCacheMutation()
+                    .revokeRefreshToken(refreshToken)
+                    .revokeUserTokens(username));
             throw new BusinessException("Refresh token reuse detected", HttpStatus.BAD_REQUEST);
         }
 
         Instant now = Instant.now();
         if (session.getExpiresAt() != null && session.getExpiresAt().isBefore(now)) {
-            userSessionService.revokeSession(session.getSessionId(), null);
+            userSessionService.revokeSession(session.getSessionId(), session.getExpiresAt(), null);
             redisAuthService.revokeRefreshToken(refreshToken);
             throw new BusinessException("Refresh token expired", HttpStatus.BAD_REQUEST);
         }
 
         User user = session.getUser();
-        String role = user.getRole().getType();
+        String role = roleRegistry.typeOf(user.getRole());
         String newSessionId = UUID.randomUUID().toString();
-        String newRefreshToken = jwtUtil.generateRefreshToken(user.getUsername(), role, newSessionId, session.getFamilyId());
-        String newAccessToken = jwtUtil.generateToken(user.getUsername(), role);
+        ParsedToken newRefreshToken = jwtUtil.issueRefreshToken(user.getUsername(), role, newSessionId, session.getFamilyId());
+        String newAccessToken = jwtUtil.generateToken(user.getUsername(), role, newRefreshToken);
 
-        userSessionService.revokeSession(session.getSessionId(), newSessionId);
+        userSessionService.revokeSession(session.getSessionId(), session.getExpiresAt(), newSessionId);
         userSessionService.createSession(
                 user,
                 newSessionId,
                 session.getFamilyId(),
-                newRefreshToken,
-                jwtUtil.getExpiration(newRefreshToken),
+                newRefreshToken.getToken(),
+                newRefreshToken.getExpiration(),
                 clientIp,
                 userAgent
         );
 
-        redisAuthService.revokeRefreshToken(refreshToken);
-        redisAuthService.cacheRefreshToken(newRefreshToken, newSessionId);
-        redisAuthService.evictUserDetails(username);
+        redisAuthService.applyAtomically(new AuthCacheMutation()
+                .revokeRefreshToken(refreshToken)
+                .cacheRefreshToken(newRefreshToken.getToken(), newSessionId)
+                .evictUserDetails(username));
 
-        return new TokenResponseDto(newAccessToken, newRefreshToken);
+        return new TokenResponseDto(newAccessToken, newRefreshToken.getToken());
     }
 
     @Transactional
@@ -149,19 +196,26 @@ public class AuthService {
     @Transactional
     public void logout(RefreshTokenRequest request, String clientIp) {
         String refreshToken = request.getRefreshToken();
-        if (!jwtUtil.validate(refreshToken)) {
+        ParsedToken parsed = jwtUtil.parse(refreshToken).orElse(null);
+        if (parsed == null) {
             return;
         }
 
-        String sessionId = jwtUtil.getSessionId(refreshToken);
-        String username = jwtUtil.getUsername(refreshToken);
-        if (sessionId != null) {
-            userSessionService.revokeSession(sessionId, null);
+        String sessionId = parsed.getSessionId();
+        String username = parsed.getUsername();
+        // Access tokens also carry a sid, but logout only ends a session through its refresh token.
+        if (parsed.isRefreshToken() && sessionId != null && parsed.getExpiration() != null) {
+            if (redisSessions) {
+                refreshSessionStore.revoke(sessionId, parsed.getExpiration());
+            } else {
+                userSessionService.revokeSession(sessionId, parsed.getExpiration(), null);
+            }
         }
-        redisAuthService.revokeRefreshToken(refreshToken);
+        AuthCacheMutation mutation = new AuthCacheMutation().revokeRefreshToken(refreshToken);
         if (username != null) {
-            redisAuthService.evictUserDetails(username);
+            mutation.evictUserDetails(username);
         }
+        redisAuthService.apply(mutation);
         log.info("Logout completed for clientIp={}", clientIp);
     }
 
@@ -173,31 +227,109 @@ public class AuthService {
     public TokenResponseDto loginWithGoogle(String googleToken, String clientIp, String userAgent) {
         try {
             User user = googleOAuthService.verifyGoogleToken(googleToken);
-            return issueSessionTokens(user, clientIp, userAgent, null);
+            return issueSessionTokens(user, clientIp, userAgent, false);
         } catch (GeneralSecurityException | IOException e) {
             throw new BusinessException("Invalid Google token", HttpStatus.BAD_REQUEST);
         }
     }
 
-    private TokenResponseDto issueSessionTokens(User user, String clientIp, String userAgent, String familyIdOverride) {
-        String role = user.getRole().getType();
-        String accessToken = jwtUtil.generateToken(user.getUsername(), role);
-        String familyId = familyIdOverride == null ? UUID.randomUUID().toString() : familyIdOverride;
+    private TokenResponseDto issueSessionTokens(User user, String clientIp, String userAgent, boolean credentialsChanged) {
+        String role = roleRegistry.typeOf(user.getRole());
+        String familyId = UUID.randomUUID().toString();
         String sessionId = UUID.randomUUID().toString();
-        String refreshToken = jwtUtil.generateRefreshToken(user.getUsername(), role, sessionId, familyId);
+        ParsedToken refreshToken = jwtUtil.issueRefreshToken(user.getUsername(), role, sessionId, familyId);
+        String accessToken = jwtUtil.generateToken(user.getUsername(), role, refreshToken);
+
+        if (redisSessions) {
+            refreshSessionStore.create(refreshToken, user.getId(), clientIp, userAgent);
+            if (credentialsChanged) {
+                redisAuthService.evictUserDetails(user.getUsername());
+            }
+            return new TokenResponseDto(accessToken, refreshToken.getToken());
+        }
 
         userSessionService.createSession(
                 user,
                 sessionId,
                 familyId,
-                refreshToken,
-                jwtUtil.getExpiration(refreshToken),
+                refreshToken.getToken(),
+                refreshToken.getExpiration(),
                 clientIp,
                 userAgent
         );
 
-        redisAuthService.cacheRefreshToken(refreshToken, sessionId);
-        redisAuthService.evictUserDetails(user.getUsername());
-        return new TokenResponseDto(accessToken, refreshToken);
+        AuthCacheMutation mutation = new AuthCacheMutation().cacheRefreshToken(refreshToken.getToken(), sessionId);
+        if (credentialsChanged) {
+            mutation.evictUserDetails(user.getUsername());
+        }
+        redisAuthService.apply(mutation);
+        return new TokenResponseDto(accessToken, refreshToken.getToken());
+    }
+
+    /**
+     * Redis-mode refresh: one script call validates and rotates the session; no database access.
+     * The role comes from the cached user details so role changes still apply on the next refresh.
+     */
+    private TokenResponseDto rotateInRedis(ParsedToken presented, String clientIp, String userAgent) {
+        String username = presented.getUsername();
+        String role;
+        try {
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            role = userDetails.getAuthorities().stream()
+                    .map(authority -> authority.getAuthority())
+                    .filter(authority -> authority.startsWith("ROLE_"))
+                    .map(authority -> authority.substring("ROLE_".length()))
+                    .findFirst()
+                    .orElseThrow(() -> new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST));
+        } catch (UsernameNotFoundException e) {
+            throw new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST);
+        }
+
+        String newSessionId = UUID.randomUUID().toString();
+        ParsedToken newRefreshToken = jwtUtil.issueRefreshToken(username, role, newSessionId, presented.getFamilyId());
+
+        switch (refreshSessionStore.rotate(presented, newRefreshToken, clientIp, userAgent)) {
+            case OK -> {
+                return new TokenResponseDto(jwtUtil.generateToken(username, role, newRefreshToken), newRefreshToken.getToken());
+            }
+            case MISSING -> {
+                return adoptDatabaseSession(presented, newRefreshToken, role, clientIp, userAgent);
+            }
+            case MISMATCH -> throw new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST);
+            case REVOKED -> {
+                redisAuthService.revokeUserTokens(username);
+                throw new BusinessException("Refresh token is revoked", HttpStatus.BAD_REQUEST);
+            }
+            case REUSED -> {
+                redisAuthService.revokeUserTokens(username);
+                throw new BusinessException("Refresh token reuse detected", HttpStatus.BAD_REQUEST);
+            }
+            default -> throw new IllegalStateException("Unexpected rotation result");
+        }
+    }
+
+    /**
+     * A session Redis has never seen may have been created in Postgres before Redis mode was switched
+     * on. Validate it there once, revoke it, and continue the family in Redis, so the cutover does not
+     * log everyone out.
+     */
+    private TokenResponseDto adoptDatabaseSession(ParsedToken presented, ParsedToken next, String role,
+                                                  String clientIp, String userAgent) {
+        String username = presented.getUsername();
+        UserSession session = userSessionService.findSession(presented.getSessionId(), presented.getExpiration())
+                .orElseThrow(() -> new BusinessException("Refresh session not found", HttpStatus.BAD_REQUEST));
+        if (!username.equals(session.getUser().getUsername())) {
+            refreshSessionStore.revokeFamily(session.getFamilyId());
+            throw new BusinessException("Invalid refresh token", HttpStatus.BAD_REQUEST);
+        }
+        // A failed revoke means another request already rotated this session: treat it as reuse.
+        if (session.isRevoked() || !userSessionService.isRefreshTokenMatch(session, presented.getToken())
+                || !userSessionService.revokeSession(session.getSessionId(), session.getExpiresAt(), next.getSessionId())) {
+            refreshSessionStore.revokeFamily(session.getFamilyId());
+            redisAuthService.revokeUserTokens(username);
+            throw new BusinessException("Refresh token reuse detected", HttpStatus.BAD_REQUEST);
+        }
+        refreshSessionStore.create(next, session.getUser().getId(), clientIp, userAgent);
+        return new TokenResponseDto(jwtUtil.generateToken(username, role, next), next.getToken());
     }
 }
@@ -0,0 +1,36 @@
+package org.ecom.service;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+
+/**
+ * {@link GoogleIdTokenVerifier} that checks signatures against {@link GoogleSigningKeyProvider}
+ * instead of its own lazily refreshed key manager, so verification never waits on a cert fetch.
+ * Payload checks (issuer, audience, expiry) are inherited unchanged.
+ */
+public class CachedKeysGoogleIdTokenVerifier extends GoogleIdTokenVerifier {
+
+    private final GoogleSigningKeyProvider keyProvider;
+
+    public CachedKeysGoogleIdTokenVerifier(GoogleIdTokenVerifier.Builder builder, GoogleSigningKeyProvider keyProvider) {
+        super(builder);
+        this.keyProvider = keyProvider;
+    }
+
+    @Override
+    public boolean verify(GoogleIdToken idToken) throws GeneralSecurityException, IOException {
+        if (!verifyPayload(idToken)) {
+            return false;
+        }
+        for (PublicKey publicKey : keyProvider.getPublicKeys()) {
+            if (idToken.verifySignature(publicKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
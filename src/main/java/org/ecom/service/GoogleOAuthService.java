@@ -2,40 +2,28 @@ package org.ecom.service;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
 import lombok.RequiredArgsConstructor;
 import org.ecom.model.Role;
 import org.ecom.model.User;
-import org.ecom.repository.RoleRepository;
 import org.ecom.repository.UserRepository;
 import org.ecom.util.JwtUtil;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.util.Collections;
 
 @Service
 @RequiredArgsConstructor
 public class GoogleOAuthService {
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final RoleRegistry roleRegistry;
     private final JwtUtil jwtUtil;
     private final RedisAuthService redisAuthService;
-
-    @Value("${google.oauth.client-id}")
-    private String clientId;
+    private final GoogleIdTokenVerifier googleIdTokenVerifier;
+    private final UserExistenceIndex userExistenceIndex;
 
     public User verifyGoogleToken(String idTokenString) throws GeneralSecurityException, IOException{
-        GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder(
-                new NetHttpTransport(),
-                GsonFactory.getDefaultInstance())
-                .setAudience(Collections.singletonList(clientId))
-                .build();
-
-        GoogleIdToken idToken = verifier.verify(idTokenString);
+        GoogleIdToken idToken = googleIdTokenVerifier.verify(idTokenString);
         if(idToken != null){
             GoogleIdToken.Payload payload = idToken.getPayload();
             String googleId = payload.getSubject();
@@ -52,10 +40,11 @@ public class GoogleOAuthService {
                 user.setUsername(email); // Dùng email làm username
                 user.setProvider("google");
 
-                Role defaultRole = roleRepository.findByType("USER")
+                Role defaultRole = roleRegistry.findByType("USER")
                         .orElseThrow(() -> new RuntimeException("Default role USER not found"));
                 user.setRole(defaultRole);
                 user = userRepository.save(user);
+                userExistenceIndex.add(user.getUsername(), user.getEmail());
             }else{
                 if (user.getGoogleId() == null) {
                     user.setGoogleId(googleId);
@@ -65,6 +54,7 @@ public class GoogleOAuthService {
                 }
                 user.setProvider("google");
                 user = userRepository.save(user);
+                userExistenceIndex.add(null, user.getEmail());
             }
             return user;
         }else {
@@ -0,0 +1,172 @@
+package org.ecom.service;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds Google's ID-token signing keys and refreshes them off the request path.
+ * <p>
+ * Keys are prefetched at startup and re-fetched by a scheduled check shortly before the
+ * {@code Cache-Control: max-age} of the last response runs out. A failed fetch keeps serving the
+ * previous keys; only a node that has never loaded keys fetches synchronously on first use.
+ */
+@Component
+@Slf4j
+public class GoogleSigningKeyProvider {
+
+    private static final Pattern MAX_AGE = Pattern.compile("\\bmax-age\\s*=\\s*(\\d+)");
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+    private static final Duration MIN_MAX_AGE = Duration.ofMinutes(1);
+    // Same margin GooglePublicKeysManager uses before treating keys as stale.
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(5);
+
+    private final HttpTransport httpTransport;
+    private final JsonFactory jsonFactory;
+    private final String certsUrl;
+    private final Clock clock;
+
+    // ReentrantLock rather than synchronized: the fetch blocks on I/O and must not pin a virtual thread.
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile List<PublicKey> publicKeys = List.of();
+    private volatile long refreshAtMillis;
+
+    @Autowired
+    public GoogleSigningKeyProvider(HttpTransport googleHttpTransport,
+                                    JsonFactory googleJsonFactory,
+                                    @Value("${google.oauth.certs-url:https://www.googleapis.com/oauth2/v1/certs}") String certsUrl) {
+        this(googleHttpTransport, googleJsonFactory, certsUrl, Clock.systemUTC());
+    }
+
+    GoogleSigningKeyProvider(HttpTransport httpTransport, JsonFactory jsonFactory, String certsUrl, Clock clock) {
+        this.httpTransport = httpTransport;
+        this.jsonFactory = jsonFactory;
+        this.certsUrl = certsUrl;
+        this.clock = clock;
+    }
+
+    /**
+     * Current signing keys. Only blocks on the network when no fetch has ever succeeded.
+     */
+    public List<PublicKey> getPublicKeys() throws GeneralSecurityException, IOException {
+        List<PublicKey> keys = publicKeys;
+        if (keys.isEmpty()) {
+            refreshLock.lock();
+            try {
+                if (publicKeys.isEmpty()) {
+                    refresh();
+                }
+                keys = publicKeys;
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return keys;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prefetch() {
+        refreshQuietly();
+    }
+
+    @Scheduled(fixedDelayString = "${google.oauth.keys.check-interval-ms:60000}")
+    public void refreshIfStale() {
+        if (publicKeys.isEmpty() || clock.millis() >= refreshAtMillis) {
+            refreshQuietly();
+        }
+    }
+
+    /**
+     * Fetch the certificate set and swap it in. The previous keys stay in place if this throws.
+     */
+    public void refresh() throws GeneralSecurityException, IOException {
+        refreshLock.lock();
+        try {
+            fetch();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void fetch() throws GeneralSecurityException, IOException {
+        HttpResponse response = httpTransport.createRequestFactory()
+                .buildGetRequest(new GenericUrl(certsUrl))
+                .execute();
+        List<PublicKey> keys = new ArrayList<>();
+        try {
+            GenericJson certs = jsonFactory.createJsonParser(response.getContent(), StandardCharsets.UTF_8)
+                    .parse(GenericJson.class);
+            CertificateFactory factory = CertificateFactory.getInstance("X.509");
+            for (Map.Entry<String, Object> entry : certs.entrySet()) {
+                byte[] pem = String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8);
+                X509Certificate certificate = (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(pem));
+                keys.add(certificate.getPublicKey());
+            }
+        } finally {
+            response.disconnect();
+        }
+        if (keys.isEmpty()) {
+            throw new GeneralSecurityException("Google certs endpoint returned no keys");
+        }
+
+        Duration maxAge = maxAge(response.getHeaders());
+        publicKeys = List.copyOf(keys);
+        refreshAtMillis = clock.millis() + Math.max(maxAge.minus(REFRESH_AHEAD).toMillis(), MIN_MAX_AGE.toMillis());
+        log.debug("Loaded {} Google signing keys, next refresh in {}s", keys.size(),
+                (refreshAtMillis - clock.millis()) / 1000);
+    }
+
+    long getRefreshAtMillis() {
+        return refreshAtMillis;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            log.warn("Google signing key refresh failed, keeping {} cached keys: {}", publicKeys.size(), e.getMessage());
+        }
+    }
+
+    private Duration maxAge(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl == null) {
+            return DEFAULT_MAX_AGE;
+        }
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        if (!matcher.find()) {
+            return DEFAULT_MAX_AGE;
+        }
+        long seconds = Long.parseLong(matcher.group(1));
+        if (headers.getAge() != null) {
+            seconds -= headers.getAge();
+        }
+        return Duration.ofSeconds(Math.max(seconds, MIN_MAX_AGE.toSeconds()));
+    }
+}
@@ -0,0 +1,204 @@
+package org.ecom.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Approximately global sliding-window counter. This is not a token bucket: there is no refill rate or
+ * burst allowance, only a request count per window. Every decision is made from in-process state; consumption
+ * is pushed to Redis and the cluster-wide counts pulled back in one pipeline per sync interval, so Redis
+ * traffic depends on the number of active keys, not on the request rate.
+ * <p>
+ * Each key keeps the cluster count for the current and previous fixed window (as of the last sync) plus
+ * local consumption not yet synced. The estimate weights the previous window by how much of it still
+ * overlaps the sliding window. Between syncs other nodes' traffic is not visible, so the limit can be
+ * overshot by roughly (nodes - 1) x sync interval worth of requests.
+ */
+@Component
+@Slf4j
+public class HybridRateLimiter {
+
+    private static final String KEY_PREFIX = "auth:rl:";
+    private static final long MAX_TRACKED_KEYS = 100_000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Clock clock;
+    private final Cache<String, Window> windows = Caffeine.newBuilder()
+            .maximumSize(MAX_TRACKED_KEYS)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    @Autowired
+    public HybridRateLimiter(StringRedisTemplate stringRedisTemplate) {
+        this(stringRedisTemplate, Clock.systemUTC());
+    }
+
+    HybridRateLimiter(StringRedisTemplate stringRedisTemplate, Clock clock) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.clock = clock;
+    }
+
+    /**
+     * Consume one permit for {@code key} under the named limit. Never touches Redis.
+     */
+    public boolean tryAcquire(String limitName, String key, long limit, Duration window) {
+        String id = KEY_PREFIX + limitName + ":" + key;
+        return windows.get(id, ignored -> new Window(id, window.toMillis()))
+                .tryAcquire(clock.millis(), limit);
+    }
+
+    /**
+     * Push pending local consumption to Redis and refresh cluster-wide counts for those keys.
+     */
+    @Scheduled(fixedDelayString = "${app.security.rate-limit.sync-interval-ms:250}")
+    public void sync() {
+        List<Flush> flushes = new ArrayList<>();
+        for (Window window : windows.asMap().values()) {
+            Flush flush = window.drain();
+            if (flush != null) {
+                flushes.add(flush);
+            }
+        }
+        if (flushes.isEmpty()) {
+            return;
+        }
+
+        List<Object> results;
+        try {
+            results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (Flush flush : flushes) {
+                        String currentKey = flush.window().redisKey(flush.slot());
+                        String previousKey = flush.window().redisKey(flush.slot() - 1);
+                        long ttlMs = flush.window().windowMs() * 2;
+                        if (flush.previousCount() > 0) {
+                            ops.opsForValue().increment(previousKey, flush.previousCount());
+                            ops.expire(previousKey, ttlMs, TimeUnit.MILLISECONDS);
+                        }
+                        ops.opsForValue().increment(currentKey, flush.currentCount());
+                        ops.expire(currentKey, ttlMs, TimeUnit.MILLISECONDS);
+                        ops.opsForValue().get(previousKey);
+                    }
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Rate limiter sync failed, keeping local counts: {}", e.getMessage());
+            flushes.forEach(flush -> flush.window().restore(flush));
+            return;
+        }
+
+        int index = 0;
+        for (Flush flush : flushes) {
+            if (flush.previousCount() > 0) {
+                index += 2;
+            }
+            Long current = (Long) results.get(index);
+            index += 2;
+            Object previous = results.get(index++);
+            flush.window().reconcile(flush.slot(),
+                    current == null ? 0 : current,
+                    previous == null ? 0 : Long.parseLong(previous.toString()));
+        }
+    }
+
+    private record Flush(Window window, long slot, long currentCount, long previousCount) {
+    }
+
+    private static final class Window {
+        private final String id;
+        private final long windowMs;
+        private long slot = -1;
+        private long clusterCurrent;
+        private long clusterPrevious;
+        private long pendingCurrent;
+        private long pendingPrevious;
+
+        private Window(String id, long windowMs) {
+            this.id = id;
+            this.windowMs = windowMs;
+        }
+
+        long windowMs() {
+            return windowMs;
+        }
+
+        String redisKey(long slot) {
+            return id + ":" + slot;
+        }
+
+        synchronized boolean tryAcquire(long nowMs, long limit) {
+            roll(nowMs / windowMs);
+            double overlap = 1.0 - (double) (nowMs % windowMs) / windowMs;
+            double estimate = (clusterPrevious + pendingPrevious) * overlap + clusterCurrent + pendingCurrent;
+            if (estimate + 1 > limit) {
+                return false;
+            }
+            pendingCurrent++;
+            return true;
+        }
+
+        synchronized Flush drain() {
+            if (pendingCurrent == 0 && pendingPrevious == 0) {
+                return null;
+            }
+            Flush flush = new Flush(this, slot, pendingCurrent, pendingPrevious);
+            // Optimistically count what we are about to flush; reconcile() replaces it with Redis' totals.
+            clusterCurrent += pendingCurrent;
+            clusterPrevious += pendingPrevious;
+            pendingCurrent = 0;
+            pendingPrevious = 0;
+            return flush;
+        }
+
+        synchronized void restore(Flush flush) {
+            if (flush.slot() == slot) {
+                clusterCurrent -= flush.currentCount();
+                clusterPrevious -= flush.previousCount();
+                pendingCurrent += flush.currentCount();
+                pendingPrevious += flush.previousCount();
+            }
+        }
+
+        synchronized void reconcile(long flushedSlot, long current, long previous) {
+            if (flushedSlot == slot) {
+                clusterCurrent = current;
+                clusterPrevious = previous;
+            }
+        }
+
+        private void roll(long nowSlot) {
+            if (nowSlot == slot) {
+                return;
+            }
+            if (nowSlot == slot + 1) {
+                clusterPrevious = clusterCurrent;
+                // Unsynced hits from the window that just closed are still flushed against it.
+                pendingPrevious = pendingCurrent;
+            } else {
+                clusterPrevious = 0;
+                pendingPrevious = 0;
+            }
+            clusterCurrent = 0;
+            pendingCurrent = 0;
+            slot = nowSlot;
+        }
+    }
+}
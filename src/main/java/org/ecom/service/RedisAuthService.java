@@ -1,58 +1,147 @@
 package org.ecom.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class RedisAuthService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    public static final String INVALIDATION_CHANNEL = "auth:cache:invalidate";
+
+    // UserDetails use the compact binary format; session ids, flags and counters are plain strings.
+    private final RedisTemplate<String, UserDetails> userDetailsRedisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final HybridRateLimiter rateLimiter;
     private static final String USER_CACHE_PREFIX = "user:";
     private static final String TOKEN_CACHE_PREFIX = "token:";
     private static final String LOGIN_FAIL_PREFIX = "auth:login:fail:";
     private static final String LOGIN_LOCK_PREFIX = "auth:login:lock:";
-    private static final String REFRESH_RATE_PREFIX = "auth:refresh:rate:";
+    private static final String REFRESH_RATE_LIMIT = "refresh";
+    private static final String LOGIN_RATE_LIMIT = "login";
+    private static final String TOKENS_NOT_BEFORE_PREFIX = "auth:nbf:";
     private static final long USER_CACHE_TTL = 30;
     private static final long TOKEN_CACHE_TTL = 60;
+    private static final long NOT_BEFORE_LOCAL_TTL_SECONDS = 30;
+    private static final long NOT_BEFORE_LOCAL_MAX_SIZE = 100_000;
+    private static final long USER_LOCAL_TTL_SECONDS = 30;
+    private static final long USER_LOCAL_MAX_SIZE = 10_000;
+    private static final String USER_INVALIDATION = "user:";
+    private static final String NOT_BEFORE_INVALIDATION = "nbf:";
+    private static final long LOGIN_LOCK_LOCAL_MAX_SIZE = 100_000;
+    private static final RedisScript<Long> LOGIN_ATTEMPT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/login-attempt.lua"), Long.class);
+
+    // Near cache in front of Redis. Peers are told to drop entries over INVALIDATION_CHANNEL;
+    // the TTL bounds staleness if a pub/sub message is lost.
+    private final Cache<String, UserDetails> userDetailsNearCache = Caffeine.newBuilder()
+            .maximumSize(USER_LOCAL_MAX_SIZE)
+            .expireAfterWrite(USER_LOCAL_TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    // Per-user revocation epochs (epoch seconds, 0 = none) held locally so the request path avoids Redis.
+    private final Cache<String, Long> tokensNotBeforeCache = Caffeine.newBuilder()
+            .maximumSize(NOT_BEFORE_LOCAL_MAX_SIZE)
+            .expireAfterWrite(NOT_BEFORE_LOCAL_TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    // Username/IP pairs this node saw locked, with the lock's expiry (epoch ms). Lets a locked pair be
+    // rejected before BCrypt and without a Redis call; entries never outlive the Redis lock.
+    private final Cache<String, Long> loginLockCache = Caffeine.newBuilder()
+            .maximumSize(LOGIN_LOCK_LOCAL_MAX_SIZE)
+            .expireAfter(new Expiry<String, Long>() {
+                @Override
+                public long expireAfterCreate(String key, Long lockedUntil, long currentTime) {
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, lockedUntil - System.currentTimeMillis()));
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Long lockedUntil, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, lockedUntil, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, Long lockedUntil, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
     @Value("${app.security.login.max-failed-attempts:5}")
     private long maxLoginFailedAttempts;
     @Value("${app.security.login.fail-window-minutes:15}")
     private long loginFailWindowMinutes;
     @Value("${app.security.login.lock-minutes:15}")
     private long loginLockMinutes;
+    @Value("${app.security.login.ip-limit-enabled:false}")
+    private boolean loginIpLimitEnabled;
+    @Value("${app.security.login.max-attempts-per-window:50}")
+    private long maxLoginAttemptsPerWindow;
+    @Value("${app.security.login.attempt-window-minutes:15}")
+    private long loginAttemptWindowMinutes;
     @Value("${app.security.refresh.max-attempts-per-window:30}")
     private long maxRefreshAttemptsPerWindow;
     @Value("${app.security.refresh.window-minutes:15}")
     private long refreshWindowMinutes;
+    @Value("${app.jwt.expiration-ms:3600000}")
+    private long accessTokenExpirationMs;
 
     /**
      * Cache UserDetails theo username
      */
     public void cacheUserDetails(String username, UserDetails userDetails){
         String key = USER_CACHE_PREFIX + username;
-        redisTemplate.opsForValue().set(key, userDetails, USER_CACHE_TTL, TimeUnit.MINUTES);
+        userDetailsRedisTemplate.opsForValue().set(key, userDetails, USER_CACHE_TTL, TimeUnit.MINUTES);
+        userDetailsNearCache.put(username, userDetails);
     }
 
     /**
-     * Lấy UserDetails từ cache
+     * Lấy UserDetails từ cache (local trước, sau đó Redis)
      */
     public UserDetails getUserDetailsFromCache(String username){
-        String key = USER_CACHE_PREFIX + username;
-        return (UserDetails) redisTemplate.opsForValue().get(key);
+        UserDetails local = userDetailsNearCache.getIfPresent(username);
+        if (local == null) {
+            String key = USER_CACHE_PREFIX + username;
+            local = userDetailsRedisTemplate.opsForValue().get(key);
+            if (local == null) {
+                return null;
+            }
+            userDetailsNearCache.put(username, local);
+        }
+        // Hand out a copy: authentication erases credentials on the principal it returns.
+        return User.withUserDetails(local).build();
     }
 
     /**
-     * Xóa UserDetails khỏi cache
+     * Xóa UserDetails khỏi cache trên mọi node
      */
     public void evictUserDetails(String username){
         String key = USER_CACHE_PREFIX + username;
-        redisTemplate.delete(key);
+        userDetailsRedisTemplate.delete(key);
+        userDetailsNearCache.invalidate(username);
+        publishInvalidation(USER_INVALIDATION + username);
     }
 
     /**
@@ -60,7 +149,7 @@ public class RedisAuthService {
      */
     public void cacheRefreshToken(String refreshToken, String sessionId){
         String key = TOKEN_CACHE_PREFIX + refreshToken;
-        redisTemplate.opsForValue().set(key, sessionId, TOKEN_CACHE_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.opsForValue().set(key, sessionId, TOKEN_CACHE_TTL, TimeUnit.MINUTES);
     }
 
     /**
@@ -68,7 +157,7 @@ public class RedisAuthService {
      */
     public boolean isRefreshTokenValid(String refreshToken) {
         String key = TOKEN_CACHE_PREFIX + refreshToken;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
     }
 
     /**
@@ -76,7 +165,7 @@ public class RedisAuthService {
      */
     public String getSessionIdFromRefreshToken(String refreshToken) {
         String key = TOKEN_CACHE_PREFIX + refreshToken;
-        return (String) redisTemplate.opsForValue().get(key);
+        return stringRedisTemplate.opsForValue().get(key);
     }
 
     /**
@@ -84,7 +173,7 @@ public class RedisAuthService {
      */
     public void revokeRefreshToken(String refreshToken) {
         String key = TOKEN_CACHE_PREFIX + refreshToken;
-        redisTemplate.delete(key);
+        stringRedisTemplate.delete(key);
     }
 
     /**
@@ -94,34 +183,166 @@ public class RedisAuthService {
         evictUserDetails(username);
     }
 
-    public long recordFailedLogin(String username, String clientIp) {
-        String key = loginFailKey(username, clientIp);
-        Long attempts = redisTemplate.opsForValue().increment(key);
-        if (attempts != null && attempts == 1) {
-            redisTemplate.expire(key, loginFailWindowMinutes, TimeUnit.MINUTES);
+    /**
+     * Reject every token issued to the user before now (password change, user deletion, reuse detection).
+     * Key lives as long as the longest access token, after which older tokens are expired anyway.
+     */
+    public void revokeUserTokens(String username) {
+        long notBefore = Instant.now().getEpochSecond();
+        stringRedisTemplate.opsForValue().set(TOKENS_NOT_BEFORE_PREFIX + username, Long.toString(notBefore),
+                accessTokenExpirationMs, TimeUnit.MILLISECONDS);
+        tokensNotBeforeCache.put(username, notBefore);
+        publishInvalidation(NOT_BEFORE_INVALIDATION + username);
+    }
+
+    /**
+     * True if the token was issued at or before the user's revocation epoch.
+     * Answered from the local cache; Redis is read at most once per user per local TTL.
+     * <p>
+     * {@code iat} has one-second resolution, so a token from the revocation second cannot be told apart
+     * from one issued just before it; both are rejected. A token issued just after it in that same
+     * second is rejected too, and the client simply refreshes.
+     */
+    public boolean isTokenRevoked(String username, Instant issuedAt) {
+        long notBefore = tokensNotBeforeCache.get(username, this::loadTokensNotBefore);
+        return notBefore > 0 && (issuedAt == null || issuedAt.getEpochSecond() <= notBefore);
+    }
+
+    private long loadTokensNotBefore(String username) {
+        String value = stringRedisTemplate.opsForValue().get(TOKENS_NOT_BEFORE_PREFIX + username);
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    /**
+     * Send every write in the mutation as one pipeline (single round trip, not atomic).
+     */
+    public void apply(AuthCacheMutation mutation) {
+        apply(mutation, false);
+    }
+
+    /**
+     * Send every write in the mutation as one pipelined MULTI/EXEC, so readers never see half a rotation.
+     */
+    public void applyAtomically(AuthCacheMutation mutation) {
+        apply(mutation, true);
+    }
+
+    private void apply(AuthCacheMutation mutation, boolean atomic) {
+        if (mutation.isEmpty()) {
+            return;
+        }
+        String notBefore = Long.toString(Instant.now().getEpochSecond());
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                if (atomic) {
+                    ops.multi();
+                }
+                mutation.getRevokedRefreshTokens().forEach(token -> ops.delete(TOKEN_CACHE_PREFIX + token));
+                mutation.getCachedRefreshTokens().forEach((token, sessionId) -> ops.opsForValue()
+                        .set(TOKEN_CACHE_PREFIX + token, sessionId, TOKEN_CACHE_TTL, TimeUnit.MINUTES));
+                mutation.getRevokedUserTokens().forEach(username -> ops.opsForValue()
+                        .set(TOKENS_NOT_BEFORE_PREFIX + username, notBefore, accessTokenExpirationMs, TimeUnit.MILLISECONDS));
+                mutation.getEvictedUsers().forEach(username -> ops.delete(USER_CACHE_PREFIX + username));
+                mutation.getEvictedUsers().forEach(username -> ops.convertAndSend(INVALIDATION_CHANNEL, USER_INVALIDATION + username));
+                mutation.getRevokedUserTokens().forEach(username -> ops.convertAndSend(INVALIDATION_CHANNEL, NOT_BEFORE_INVALIDATION + username));
+                if (atomic) {
+                    ops.exec();
+                }
+                return null;
+            }
+        });
+        mutation.getEvictedUsers().forEach(userDetailsNearCache::invalidate);
+        mutation.getRevokedUserTokens().forEach(username -> tokensNotBeforeCache.put(username, Long.parseLong(notBefore)));
+    }
+
+    /**
+     * Drop local copies named by a message on {@link #INVALIDATION_CHANNEL}, published by this or another node.
+     */
+    public void handleInvalidation(String message) {
+        if (message.startsWith(USER_INVALIDATION)) {
+            userDetailsNearCache.invalidate(message.substring(USER_INVALIDATION.length()));
+        } else if (message.startsWith(NOT_BEFORE_INVALIDATION)) {
+            tokensNotBeforeCache.invalidate(message.substring(NOT_BEFORE_INVALIDATION.length()));
+        }
+    }
+
+    private void publishInvalidation(String message) {
+        stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+    }
+
+    /**
+     * Check the lock and record the outcome of a login attempt in one round trip (EVALSHA).
+     * Success clears the failure counter; failure increments it and sets the lock at the threshold.
+     *
+     * @return false if the username/IP pair was already locked, in which case nothing is recorded
+     */
+    public boolean registerLoginAttempt(String username, String clientIp, boolean success) {
+        String lockKey = loginLockKey(username, clientIp);
+        Long result = stringRedisTemplate.execute(
+                LOGIN_ATTEMPT_SCRIPT,
+                List.of(loginFailKey(username, clientIp), lockKey),
+                success ? "1" : "0",
+                Long.toString(maxLoginFailedAttempts),
+                Long.toString(TimeUnit.MINUTES.toSeconds(loginFailWindowMinutes)),
+                Long.toString(TimeUnit.MINUTES.toSeconds(loginLockMinutes))
+        );
+        if (result == null) {
+            return true;
+        }
+        if (result < 0) {
+            // Locked: the script returns minus the remaining lock time.
+            loginLockCache.put(lockKey, System.currentTimeMillis() - result);
+            return false;
         }
-        if (attempts != null && attempts >= maxLoginFailedAttempts) {
-            redisTemplate.opsForValue().set(loginLockKey(username, clientIp), "1", loginLockMinutes, TimeUnit.MINUTES);
+        if (!success && result >= maxLoginFailedAttempts) {
+            // This failure set the lock.
+            loginLockCache.put(lockKey, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(loginLockMinutes));
         }
-        return attempts == null ? 0 : attempts;
+        return true;
     }
 
-    public boolean isLoginLocked(String username, String clientIp) {
-        return Boolean.TRUE.equals(redisTemplate.hasKey(loginLockKey(username, clientIp)));
+    /**
+     * Whether this node already saw the username/IP pair locked. No I/O: a lock set by another node is
+     * only learned from this node's next {@link #registerLoginAttempt}, and a lock deleted from Redis
+     * early keeps rejecting here until its original expiry.
+     */
+    public boolean isLoginLockedLocally(String username, String clientIp) {
+        Long lockedUntil = loginLockCache.getIfPresent(loginLockKey(username, clientIp));
+        return lockedUntil != null && lockedUntil > System.currentTimeMillis();
     }
 
-    public void clearFailedLogin(String username, String clientIp) {
-        redisTemplate.delete(loginFailKey(username, clientIp));
-        redisTemplate.delete(loginLockKey(username, clientIp));
+    /**
+     * Load scripts into the Redis script cache up front so the first login does not pay for EVAL.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadScripts() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands()
+                    .scriptLoad(LOGIN_ATTEMPT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+        } catch (RuntimeException e) {
+            // EVALSHA falls back to EVAL on NOSCRIPT, so a failed preload only costs the first call.
+            log.warn("Could not preload Redis auth scripts: {}", e.getMessage());
+        }
     }
 
     public boolean allowRefreshAttempt(String clientIp) {
-        String key = REFRESH_RATE_PREFIX + safe(clientIp);
-        Long attempts = redisTemplate.opsForValue().increment(key);
-        if (attempts != null && attempts == 1) {
-            redisTemplate.expire(key, refreshWindowMinutes, TimeUnit.MINUTES);
+        return rateLimiter.tryAcquire(REFRESH_RATE_LIMIT, safe(clientIp),
+                maxRefreshAttemptsPerWindow, Duration.ofMinutes(refreshWindowMinutes));
+    }
+
+    /**
+     * Optional per-IP cap on login attempts, checked before the password is verified. Off unless
+     * {@code app.security.login.ip-limit-enabled} is set; per-account lockout applies either way.
+     */
+    public boolean allowLoginAttempt(String clientIp) {
+        if (!loginIpLimitEnabled) {
+            return true;
         }
-        return attempts != null && attempts <= maxRefreshAttemptsPerWindow;
+        return rateLimiter.tryAcquire(LOGIN_RATE_LIMIT, safe(clientIp),
+                maxLoginAttemptsPerWindow, Duration.ofMinutes(loginAttemptWindowMinutes));
     }
 
     private String loginFailKey(String username, String clientIp) {
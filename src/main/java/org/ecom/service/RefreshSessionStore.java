@@ -0,0 +1,146 @@
+package org.ecom.service;
+
+import lombok.RequiredArgsConstructor;
+import org.ecom.config.JwtProperties;
+import org.ecom.util.ParsedToken;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Redis as the primary store for live refresh sessions (app.security.refresh.redis-sessions=true).
+ * <p>
+ * Each create/rotate/logout is a single Lua script that updates the session hash and appends an event
+ * to {@link #EVENT_STREAM} in the same step; {@link SessionEventWriter} copies those events into
+ * {@code user_sessions} for audit. Refreshing therefore costs one Redis call and no database work.
+ */
+@Component
+@RequiredArgsConstructor
+public class RefreshSessionStore {
+
+    public static final String EVENT_STREAM = "auth:session:events";
+
+    private static final String SESSION_PREFIX = "auth:rs:";
+    private static final String FAMILY_REVOKED_PREFIX = "auth:rf:";
+    private static final String USER_FAMILIES_PREFIX = "auth:uf:";
+    // Column sizes of user_sessions.ip_address / user_agent; longer values would fail the audit insert.
+    private static final int MAX_IP_LENGTH = 64;
+    private static final int MAX_USER_AGENT_LENGTH = 255;
+
+    private static final RedisScript<Long> CREATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/refresh-session-create.lua"), Long.class);
+    private static final RedisScript<String> ROTATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/refresh-session-rotate.lua"), String.class);
+    private static final RedisScript<Long> REVOKE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/refresh-session-revoke.lua"), Long.class);
+    private static final RedisScript<Long> REVOKE_FAMILY_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/refresh-session-revoke-family.lua"), Long.class);
+    private static final RedisScript<Long> REVOKE_USER_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/refresh-session-revoke-user.lua"), Long.class);
+
+    public enum RotationResult {
+        OK,
+        /** No live session for this id: expired, or created before Redis sessions were enabled. */
+        MISSING,
+        /** The session was already rotated or logged out, or its family was revoked. */
+        REVOKED,
+        /** Token claims do not match the stored session. */
+        MISMATCH,
+        /** Token hash does not match the stored session. */
+        REUSED
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JwtProperties jwtProperties;
+
+    public void create(ParsedToken refreshToken, long userId, String clientIp, String userAgent) {
+        stringRedisTemplate.execute(CREATE_SCRIPT,
+                List.of(sessionKey(refreshToken.getSessionId()), EVENT_STREAM,
+                        userFamiliesKey(refreshToken.getUsername())),
+                refreshToken.getSessionId(),
+                refreshToken.getFamilyId(),
+                refreshToken.getUsername(),
+                UserSessionService.hashToken(refreshToken.getToken()),
+                Long.toString(refreshToken.getExpiration().toEpochMilli()),
+                Long.toString(System.currentTimeMillis()),
+                safe(clientIp, MAX_IP_LENGTH),
+                safe(userAgent, MAX_USER_AGENT_LENGTH),
+                Long.toString(userId),
+                Long.toString(jwtProperties.getRefreshExpirationMs()));
+    }
+
+    /**
+     * Atomically check {@code presented} against its live session and, if valid, replace it with
+     * {@code next}. Any invalid use revokes the whole family.
+     */
+    public RotationResult rotate(ParsedToken presented, ParsedToken next, String clientIp, String userAgent) {
+        String result = stringRedisTemplate.execute(ROTATE_SCRIPT,
+                List.of(sessionKey(presented.getSessionId()), sessionKey(next.getSessionId()),
+                        FAMILY_REVOKED_PREFIX + presented.getFamilyId(), EVENT_STREAM,
+                        userFamiliesKey(presented.getUsername())),
+                presented.getSessionId(),
+                UserSessionService.hashToken(presented.getToken()),
+                presented.getUsername(),
+                presented.getFamilyId(),
+                next.getSessionId(),
+                UserSessionService.hashToken(next.getToken()),
+                Long.toString(next.getExpiration().toEpochMilli()),
+                Long.toString(jwtProperties.getRefreshExpirationMs()),
+                Long.toString(System.currentTimeMillis()),
+                safe(clientIp, MAX_IP_LENGTH),
+                safe(userAgent, MAX_USER_AGENT_LENGTH),
+                Long.toString(presented.getExpiration().toEpochMilli()));
+        return result == null ? RotationResult.MISSING : RotationResult.valueOf(result);
+    }
+
+    public boolean revoke(String sessionId, Instant expiresAt) {
+        Long revoked = stringRedisTemplate.execute(REVOKE_SCRIPT,
+                List.of(sessionKey(sessionId), EVENT_STREAM),
+                sessionId,
+                Long.toString(System.currentTimeMillis()),
+                Long.toString(expiresAt.toEpochMilli()));
+        return revoked != null && revoked == 1;
+    }
+
+    public void revokeFamily(String familyId) {
+        stringRedisTemplate.execute(REVOKE_FAMILY_SCRIPT,
+                List.of(FAMILY_REVOKED_PREFIX + familyId, EVENT_STREAM),
+                familyId,
+                Long.toString(jwtProperties.getRefreshExpirationMs()),
+                Long.toString(System.currentTimeMillis()));
+    }
+
+    /**
+     * Revoke every live session family of the user (credential change, deletion).
+     *
+     * @return the number of families revoked
+     */
+    public long revokeUser(String username) {
+        Long revoked = stringRedisTemplate.execute(REVOKE_USER_SCRIPT,
+                List.of(userFamiliesKey(username), EVENT_STREAM),
+                FAMILY_REVOKED_PREFIX,
+                Long.toString(jwtProperties.getRefreshExpirationMs()),
+                Long.toString(System.currentTimeMillis()));
+        return revoked == null ? 0 : revoked;
+    }
+
+    // Keyed by username, which the session hash is checked against; a rename revokes the old name's set.
+    private String userFamiliesKey(String username) {
+        return USER_FAMILIES_PREFIX + username;
+    }
+
+    private String sessionKey(String sessionId) {
+        return SESSION_PREFIX + sessionId;
+    }
+
+    private String safe(String value, int maxLength) {
+        if (value == null) {
+            return "unknown";
+        }
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
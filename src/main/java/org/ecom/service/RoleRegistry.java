@@ -0,0 +1,112 @@
+package org.ecom.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.ecom.model.Role;
+import org.ecom.repository.RoleRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only view of the {@code role} table, loaded at startup and swapped whole on reload.
+ * <p>
+ * Lookups by type or id do no I/O. Each call returns a fresh detached {@link Role}, so callers can
+ * assign it to a user without sharing mutable state. {@link #requestReload()} reloads this node and
+ * tells the others over {@link #RELOAD_CHANNEL}; an unknown type also triggers a reload in case a
+ * role was added without a notification, at most once per {@link #MISS_RELOAD_INTERVAL} so repeated
+ * lookups of a type that does not exist cannot turn into one query each.
+ */
+@Component
+@Slf4j
+public class RoleRegistry {
+
+    public static final String RELOAD_CHANNEL = "role:registry:reload";
+    static final Duration MISS_RELOAD_INTERVAL = Duration.ofSeconds(30);
+
+    private final RoleRepository roleRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    // ReentrantLock rather than synchronized: the reload queries the database and must not pin a
+    // virtual thread's carrier while it waits.
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final AtomicLong lastMissReloadNanos = new AtomicLong(System.nanoTime() - MISS_RELOAD_INTERVAL.toNanos());
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of());
+
+    public RoleRegistry(RoleRepository roleRepository, StringRedisTemplate stringRedisTemplate) {
+        this.roleRepository = roleRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void reload() {
+        reloadLock.lock();
+        try {
+            List<Entry> entries = roleRepository.findAll().stream()
+                    .map(role -> new Entry(role.getId(), role.getType()))
+                    .toList();
+            snapshot = new Snapshot(
+                    entries.stream().collect(Collectors.toUnmodifiableMap(Entry::type, Function.identity())),
+                    entries.stream().collect(Collectors.toUnmodifiableMap(Entry::id, Function.identity())));
+            log.info("Role registry loaded {} roles", entries.size());
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * Reloads here and on every other node (admin trigger).
+     */
+    public void requestReload() {
+        reload();
+        try {
+            stringRedisTemplate.convertAndSend(RELOAD_CHANNEL, "reload");
+        } catch (DataAccessException e) {
+            log.warn("Could not notify other nodes of role reload: {}", e.getMessage());
+        }
+    }
+
+    public Optional<Role> findByType(String type) {
+        Entry entry = snapshot.byType().get(type);
+        if (entry == null && claimMissReload()) {
+            reload();
+            entry = snapshot.byType().get(type);
+        }
+        return Optional.ofNullable(entry).map(Entry::toRole);
+    }
+
+    private boolean claimMissReload() {
+        long last = lastMissReloadNanos.get();
+        long now = System.nanoTime();
+        return now - last >= MISS_RELOAD_INTERVAL.toNanos() && lastMissReloadNanos.compareAndSet(last, now);
+    }
+
+    public Optional<Role> findById(long id) {
+        return Optional.ofNullable(snapshot.byId().get(id)).map(Entry::toRole);
+    }
+
+    /**
+     * Type of a user's role without initializing a lazy {@code role} proxy (reading the id does not).
+     */
+    public String typeOf(Role role) {
+        Entry entry = snapshot.byId().get(role.getId());
+        return entry != null ? entry.type() : role.getType();
+    }
+
+    private record Entry(long id, String type) {
+        Role toRole() {
+            return new Role(id, type);
+        }
+    }
+
+    private record Snapshot(Map<String, Entry> byType, Map<Long, Entry> byId) {
+    }
+}
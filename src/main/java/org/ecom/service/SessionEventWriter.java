@@ -0,0 +1,354 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies refresh-session events from the {@link RefreshSessionStore#EVENT_STREAM} Redis stream into
+ * {@code user_sessions}, so the table stays a complete audit trail while Redis serves the hot path.
+ * <p>
+ * Nodes share one consumer group. Each pass first retries this node's unacknowledged entries, then
+ * takes over entries another node left pending for more than {@link #CLAIM_IDLE}, then reads new ones.
+ * A batch is written in one transaction and acknowledged only after it commits; inserts ignore
+ * sessions that already exist and revokes skip rows already revoked, so replaying a batch is harmless.
+ * <p>
+ * When the database is unreachable the batch stays pending and is retried. Any other failure means
+ * some event in the batch cannot be written: the batch is retried one event at a time, and events
+ * that still fail are copied to {@link #DEAD_LETTER_STREAM} and acknowledged, so a single bad event
+ * cannot hold up the queue.
+ * <p>
+ * Producers do not cap the stream. After each pass the writer trims only entries the group has already
+ * acknowledged (see {@link #trimAcknowledged()}), so an outage or backlog never loses events; it shows
+ * up in the {@code session.events.backlog} / {@code session.events.pending} gauges and a warning once
+ * the backlog passes {@code app.security.refresh.session-backlog-warn}.
+ */
+@Component
+@Slf4j
+public class SessionEventWriter {
+
+    static final String GROUP = "session-writer";
+    static final Duration CLAIM_IDLE = Duration.ofMinutes(1);
+    static final String DEAD_LETTER_STREAM = RefreshSessionStore.EVENT_STREAM + ":dead";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO user_sessions (session_id, family_id, user_id, refresh_token_hash, expires_at, revoked,
+                                       created_at, ip_address, user_agent)
+            VALUES (?, ?, COALESCE(CAST(? AS BIGINT), (SELECT u.id FROM users u WHERE u.username = ?)),
+                    ?, ?, FALSE, ?, ?, ?)
+            ON CONFLICT (session_id, expires_at) DO NOTHING
+            """;
+    // expires_at is the partition key: matching on it lets Postgres touch a single partition.
+    private static final String REVOKE_SESSION_SQL = "UPDATE user_sessions SET revoked = TRUE, revoked_at = ?, "
+            + "replaced_by_session_id = ? WHERE session_id = ? AND expires_at = ? AND revoked = FALSE";
+    // Events queued before the session expiry was recorded; scans every partition.
+    private static final String LEGACY_REVOKE_SESSION_SQL = "UPDATE user_sessions SET revoked = TRUE, revoked_at = ?, "
+            + "replaced_by_session_id = ? WHERE session_id = ? AND revoked = FALSE";
+    private static final String REVOKE_FAMILY_SQL = "UPDATE user_sessions SET revoked = TRUE, revoked_at = ? "
+            + "WHERE family_id = ? AND revoked = FALSE AND expires_at >= ?";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transactionOperations;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Consumer consumer;
+    private final long backlogWarn;
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+
+    @Autowired
+    public SessionEventWriter(StringRedisTemplate stringRedisTemplate,
+                              JdbcTemplate jdbcTemplate,
+                              TransactionOperations transactionOperations,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.security.refresh.redis-sessions:false}") boolean enabled,
+                              @Value("${app.security.refresh.session-writer-batch-size:500}") int batchSize,
+                              @Value("${app.security.refresh.session-backlog-warn:100000}") long backlogWarn) {
+        this(stringRedisTemplate, jdbcTemplate, transactionOperations, meterRegistry, enabled, batchSize,
+                backlogWarn, ManagementFactory.getRuntimeMXBean().getName());
+    }
+
+    SessionEventWriter(StringRedisTemplate stringRedisTemplate, JdbcTemplate jdbcTemplate,
+                       TransactionOperations transactionOperations, MeterRegistry meterRegistry, boolean enabled,
+                       int batchSize, long backlogWarn, String consumerName) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionOperations = transactionOperations;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.backlogWarn = backlogWarn;
+        this.consumer = Consumer.from(GROUP, consumerName);
+        meterRegistry.gauge("session.events.backlog", backlog);
+        meterRegistry.gauge("session.events.pending", pendingCount);
+        meterRegistry.gauge("session.events.dead", deadLetters);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createGroup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(RefreshSessionStore.EVENT_STREAM.getBytes(StandardCharsets.UTF_8), GROUP,
+                            ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                log.warn("Could not create session event consumer group: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.refresh.session-writer-interval-ms:500}")
+    public void drain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            // Own pending entries: a previous write from this node failed before it was acknowledged.
+            writeAll(read(ReadOffset.from("0")));
+            writeAll(claimStale());
+            List<MapRecord<String, Object, Object>> records;
+            do {
+                records = read(ReadOffset.lastConsumed());
+                writeAll(records);
+            } while (records.size() == batchSize);
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Session event write failed, entries stay pending: {}", e.getMessage());
+        }
+        try {
+            trimAcknowledged();
+        } catch (DataAccessException e) {
+            log.warn("Could not trim the session event stream: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes entries below the oldest one still pending in the group, or below the last delivered one
+     * when nothing is pending; everything at or after that point is kept. {@code MINID ~} may leave a
+     * few acknowledged entries for the next pass but never removes newer ones.
+     */
+    void trimAcknowledged() {
+        StreamOperations<String, Object, Object> streams = stringRedisTemplate.opsForStream();
+        String lastDelivered = streams.groups(RefreshSessionStore.EVENT_STREAM).stream()
+                .filter(group -> GROUP.equals(group.groupName()))
+                .map(StreamInfo.XInfoGroup::lastDeliveredId)
+                .findFirst()
+                .orElse(null);
+        if (lastDelivered == null) {
+            return;
+        }
+        PendingMessagesSummary pending = streams.pending(RefreshSessionStore.EVENT_STREAM, GROUP);
+        long pendingTotal = pending == null ? 0 : pending.getTotalPendingMessages();
+        String minId = pendingTotal > 0 ? pending.minMessageId() : lastDelivered;
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XTRIM",
+                bytes(RefreshSessionStore.EVENT_STREAM), bytes("MINID"), bytes("~"), bytes(minId)));
+
+        Long length = streams.size(RefreshSessionStore.EVENT_STREAM);
+        Long dead = streams.size(DEAD_LETTER_STREAM);
+        backlog.set(length == null ? 0 : length);
+        pendingCount.set(pendingTotal);
+        deadLetters.set(dead == null ? 0 : dead);
+        if (backlog.get() >= backlogWarn) {
+            log.warn("Session event backlog is {} entries ({} pending); events are kept until written",
+                    backlog.get(), pendingTotal);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<MapRecord<String, Object, Object>> read(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(consumer,
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(RefreshSessionStore.EVENT_STREAM, offset));
+        return records == null ? List.of() : records;
+    }
+
+    private List<MapRecord<String, Object, Object>> claimStale() {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(RefreshSessionStore.EVENT_STREAM, GROUP, Range.unbounded(), batchSize);
+        if (pending == null || pending.isEmpty()) {
+            return List.of();
+        }
+        List<RecordId> stale = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (!consumer.getName().equals(message.getConsumerName())
+                    && message.getElapsedTimeSinceLastDelivery().compareTo(CLAIM_IDLE) >= 0) {
+                stale.add(message.getId());
+            }
+        }
+        if (stale.isEmpty()) {
+            return List.of();
+        }
+        List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                RefreshSessionStore.EVENT_STREAM, GROUP, consumer.getName(), CLAIM_IDLE, stale.toArray(RecordId[]::new));
+        return claimed == null ? List.of() : claimed;
+    }
+
+    void writeAll(List<MapRecord<String, Object, Object>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            write(records);
+        } catch (RuntimeException e) {
+            if (isUnavailable(e)) {
+                throw e;
+            }
+            log.warn("Session event batch of {} failed, retrying one by one: {}", records.size(), e.getMessage());
+            for (MapRecord<String, Object, Object> record : records) {
+                writeOne(record);
+            }
+            return;
+        }
+        acknowledge(records);
+        log.debug("Wrote {} session events", records.size());
+    }
+
+    private void writeOne(MapRecord<String, Object, Object> record) {
+        try {
+            write(List.of(record));
+        } catch (RuntimeException e) {
+            if (isUnavailable(e)) {
+                throw e;
+            }
+            deadLetter(record, e);
+        }
+        // Acknowledged one by one so a later outage does not replay events already dead-lettered.
+        acknowledge(List.of(record));
+    }
+
+    private void write(List<MapRecord<String, Object, Object>> records) {
+        Batch batch = Batch.of(records);
+        transactionOperations.executeWithoutResult(status -> {
+            if (!batch.inserts().isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch.inserts());
+            }
+            if (!batch.sessionRevokes().isEmpty()) {
+                jdbcTemplate.batchUpdate(REVOKE_SESSION_SQL, batch.sessionRevokes());
+            }
+            if (!batch.legacySessionRevokes().isEmpty()) {
+                jdbcTemplate.batchUpdate(LEGACY_REVOKE_SESSION_SQL, batch.legacySessionRevokes());
+            }
+            if (!batch.familyRevokes().isEmpty()) {
+                jdbcTemplate.batchUpdate(REVOKE_FAMILY_SQL, batch.familyRevokes());
+            }
+        });
+    }
+
+    private void deadLetter(MapRecord<String, Object, Object> record, RuntimeException failure) {
+        log.error("Moving session event {} to {}: {}", record.getId(), DEAD_LETTER_STREAM, failure.toString());
+        Map<String, String> fields = new LinkedHashMap<>();
+        record.getValue().forEach((key, value) -> fields.put(String.valueOf(key), String.valueOf(value)));
+        fields.put("source_id", record.getId().getValue());
+        fields.put("error", String.valueOf(failure));
+        stringRedisTemplate.opsForStream().add(DEAD_LETTER_STREAM, fields);
+    }
+
+    private void acknowledge(List<MapRecord<String, Object, Object>> records) {
+        stringRedisTemplate.opsForStream().acknowledge(RefreshSessionStore.EVENT_STREAM, GROUP,
+                records.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+    }
+
+    // Failures of the database itself rather than of an event: retrying later is the only option.
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    /**
+     * Statement parameters for one set of events, in stream order within each statement. Inserts run
+     * before revokes so a session created and rotated within the same batch ends up revoked.
+     */
+    record Batch(List<Object[]> inserts, List<Object[]> sessionRevokes, List<Object[]> legacySessionRevokes,
+                 List<Object[]> familyRevokes) {
+
+        static Batch of(List<MapRecord<String, Object, Object>> records) {
+            Batch batch = new Batch(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            for (MapRecord<String, Object, Object> record : records) {
+                Map<Object, Object> event = record.getValue();
+                OffsetDateTime at = timestamp(event.get("at"));
+                switch (String.valueOf(event.get("type"))) {
+                    case "CREATED" -> batch.inserts().add(insert(event, at));
+                    case "ROTATED" -> {
+                        batch.inserts().add(insert(event, at));
+                        batch.revokeSession(at, event.get("sid"), event.get("old"), event.get("oldexp"));
+                    }
+                    case "REVOKED" -> batch.revokeSession(at, null, event.get("sid"), event.get("exp"));
+                    case "FAMILY_REVOKED" -> batch.familyRevokes().add(new Object[]{at, event.get("fid"), at});
+                    default -> log.warn("Skipping unknown session event {} of type {}", record.getId(), event.get("type"));
+                }
+            }
+            return batch;
+        }
+
+        private void revokeSession(OffsetDateTime at, Object replacedBy, Object sessionId, Object expiresAt) {
+            if (expiresAt == null) {
+                legacySessionRevokes.add(new Object[]{at, replacedBy, sessionId});
+            } else {
+                sessionRevokes.add(new Object[]{at, replacedBy, sessionId, timestamp(expiresAt)});
+            }
+        }
+
+        private static Object[] insert(Map<Object, Object> event, OffsetDateTime at) {
+            // Events queued before the user id was recorded fall back to the username.
+            return new Object[]{event.get("sid"), event.get("fid"), userId(event.get("uid")), event.get("user"),
+                    event.get("hash"), timestamp(event.get("exp")), at, event.get("ip"), event.get("ua")};
+        }
+
+        private static Long userId(Object value) {
+            return value == null || String.valueOf(value).isEmpty() ? null : Long.valueOf(String.valueOf(value));
+        }
+
+        // Bind like Hibernate binds Instant (UTC OffsetDateTime) so both write paths agree on the stored value.
+        private static OffsetDateTime timestamp(Object epochMillis) {
+            return Instant.ofEpochMilli(Long.parseLong(String.valueOf(epochMillis))).atOffset(ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the daily {@code user_sessions} partitions (see V5 migration) rolling: creates partitions
+ * ahead of the longest refresh-token lifetime and detaches and drops days whose sessions are all
+ * past expiry plus the revoked-session retention. Dropping a partition replaces row-by-row deletes.
+ * <p>
+ * A day's rows may already sit in the default partition (written before that day was pre-created, or
+ * carried over by V5), and {@code CREATE ... PARTITION OF} would then fail. New partitions are
+ * therefore built as plain tables, the day's rows are moved out of the default partition, and the
+ * table is attached, all in one transaction. A partition that still cannot be created is logged as an
+ * error and counted in {@code session.partition.failures}.
+ * <p>
+ * Runs at startup and then on a fixed delay, under a Postgres advisory lock so only one node does DDL.
+ */
+@Component
+@Slf4j
+public class SessionPartitionMaintainer {
+
+    static final long MAINTENANCE_LOCK_KEY = 0x5E55_1016_0000_0001L;
+    static final String PARTITION_PREFIX = "user_sessions_p";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String LIST_PARTITIONS_SQL = """
+            SELECT c.relname FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'user_sessions'::regclass
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter failureCounter;
+    private final Clock clock;
+    private final boolean enabled;
+    private final int premakeDays;
+    private final int retentionDays;
+
+    @Autowired
+    public SessionPartitionMaintainer(JdbcTemplate jdbcTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.session.partition.enabled:true}") boolean enabled,
+                                      @Value("${app.session.partition.premake-days:7}") int premakeDays,
+                                      @Value("${app.jwt.refresh-expiration-ms}") long refreshExpirationMs,
+                                      @Value("${app.session.purge.revoked-retention-hours:168}") long revokedRetentionHours) {
+        this(jdbcTemplate, meterRegistry, Clock.systemUTC(), enabled, premakeDays, refreshExpirationMs,
+                revokedRetentionHours);
+    }
+
+    SessionPartitionMaintainer(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, Clock clock, boolean enabled,
+                               int premakeDays, long refreshExpirationMs, long revokedRetentionHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.failureCounter = Counter.builder("session.partition.failures")
+                .description("Daily session partitions that could not be created")
+                .register(meterRegistry);
+        this.clock = clock;
+        this.enabled = enabled;
+        // A new session lands in the partition of its expiry day, so always cover the full refresh lifetime.
+        this.premakeDays = Math.max(premakeDays, daysCeil(Duration.ofMillis(refreshExpirationMs)) + 1);
+        // One extra day absorbs the session time zone the TIMESTAMP column was written in.
+        this.retentionDays = daysCeil(Duration.ofHours(revokedRetentionHours)) + 1;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        scheduledMaintain();
+    }
+
+    @Scheduled(fixedDelayString = "${app.session.partition.interval-ms:3600000}",
+            initialDelayString = "${app.session.partition.interval-ms:3600000}")
+    public void scheduledMaintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            maintain();
+        } catch (RuntimeException e) {
+            log.warn("Session partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    public void maintain() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)")) {
+                log.debug("Session partition maintenance skipped, another node holds the lock");
+                return null;
+            }
+            try {
+                LocalDate today = LocalDate.now(clock);
+                List<String> existing = listPartitions(connection);
+                createUpcoming(connection, today, new HashSet<>(existing));
+                dropExpired(connection, today.minusDays(retentionDays), existing);
+            } finally {
+                advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+            }
+            return null;
+        });
+    }
+
+    private void createUpcoming(Connection connection, LocalDate today, Set<String> existing) {
+        for (LocalDate day = today.minusDays(1); !day.isAfter(today.plusDays(premakeDays)); day = day.plusDays(1)) {
+            String name = partitionName(day);
+            if (existing.contains(name)) {
+                continue;
+            }
+            try {
+                createPartition(connection, name, day);
+            } catch (SQLException e) {
+                failureCounter.increment();
+                log.error("Could not create session partition {}, its sessions stay in user_sessions_default: {}",
+                        name, e.getMessage());
+            }
+        }
+    }
+
+    private void createPartition(Connection connection, String name, LocalDate day) throws SQLException {
+        String from = "'" + day + "'";
+        String to = "'" + day.plusDays(1) + "'";
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            // Keeps new rows for this day from landing in the default partition between the move and the attach.
+            statement.execute("LOCK TABLE user_sessions_default IN ACCESS EXCLUSIVE MODE");
+            statement.execute("CREATE TABLE " + name + " (LIKE user_sessions INCLUDING DEFAULTS)");
+            int moved = statement.executeUpdate("WITH moved AS (DELETE FROM user_sessions_default"
+                    + " WHERE expires_at >= " + from + " AND expires_at < " + to + " RETURNING *)"
+                    + " INSERT INTO " + name + " SELECT * FROM moved");
+            statement.execute("ALTER TABLE user_sessions ATTACH PARTITION " + name
+                    + " FOR VALUES FROM (" + from + ") TO (" + to + ")");
+            connection.commit();
+            if (moved > 0) {
+                log.info("Created session partition {} with {} sessions moved from user_sessions_default", name, moved);
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private List<String> listPartitions(Connection connection) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(LIST_PARTITIONS_SQL)) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+
+    private void dropExpired(Connection connection, LocalDate cutoff, List<String> partitions) throws SQLException {
+        List<String> expired = new ArrayList<>();
+        for (String name : partitions) {
+            LocalDate day = partitionDay(name);
+            if (day != null && day.isBefore(cutoff)) {
+                expired.add(name);
+            }
+        }
+
+        // DETACH ... CONCURRENTLY is not allowed while a default partition exists; a plain detach
+        // of an idle partition only holds the parent lock briefly.
+        for (String name : expired) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER TABLE user_sessions DETACH PARTITION " + name);
+                statement.execute("DROP TABLE " + name);
+                log.info("Dropped expired session partition {}", name);
+            }
+        }
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + SUFFIX.format(day);
+    }
+
+    static LocalDate partitionDay(String partitionName) {
+        if (!partitionName.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partitionName.substring(PARTITION_PREFIX.length()), SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, MAINTENANCE_LOCK_KEY);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static int daysCeil(Duration duration) {
+        return (int) Math.ceil(duration.toMillis() / (double) Duration.ofDays(1).toMillis());
+    }
+}
@@ -0,0 +1,155 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes expired rows from the {@code user_sessions} default partition in small autocommitted chunks
+ * instead of one large DELETE, pausing between chunks so vacuum and regular traffic keep up. Daily
+ * partitions are dropped whole by {@link SessionPartitionMaintainer}; only rows that fell outside them
+ * need row-level deletes.
+ * <p>
+ * Revoked sessions are kept for a retention window after they expire so refresh-token reuse can
+ * still be traced to its family. Only one node purges at a time: a run holds a Postgres session
+ * advisory lock and other nodes skip that run.
+ */
+@Component
+@Slf4j
+public class SessionPurger {
+
+    // Arbitrary, stable key for pg_try_advisory_lock; only this job uses it.
+    static final long PURGE_LOCK_KEY = 0x5E55_1014_0000_0001L;
+
+    private static final String DELETE_CHUNK_SQL = """
+            DELETE FROM user_sessions_default WHERE id IN (
+                SELECT id FROM user_sessions_default
+                WHERE expires_at < ? AND (revoked = FALSE OR expires_at < ?)
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final int maxChunksPerRun;
+    private final Duration revokedRetention;
+    private final Counter deletedCounter;
+    private final Timer runTimer;
+    private final AtomicLong lastRowsPerSecond = new AtomicLong();
+
+    public SessionPurger(JdbcTemplate jdbcTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.session.purge.enabled:true}") boolean enabled,
+                         @Value("${app.session.purge.chunk-size:1000}") int chunkSize,
+                         @Value("${app.session.purge.pause-ms:50}") long pauseMs,
+                         @Value("${app.session.purge.max-chunks-per-run:500}") int maxChunksPerRun,
+                         @Value("${app.session.purge.revoked-retention-hours:168}") long revokedRetentionHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.revokedRetention = Duration.ofHours(revokedRetentionHours);
+        this.deletedCounter = Counter.builder("session.purge.deleted")
+                .description("Expired session rows deleted")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("session.purge.run")
+                .description("Duration of purge runs that held the lock")
+                .register(meterRegistry);
+        meterRegistry.gauge("session.purge.rows_per_second", lastRowsPerSecond);
+    }
+
+    @Scheduled(fixedDelayString = "${app.session.purge.interval-ms:300000}",
+            initialDelayString = "${app.session.purge.initial-delay-ms:60000}")
+    public void scheduledPurge() {
+        if (enabled) {
+            purge();
+        }
+    }
+
+    /**
+     * Run one purge pass. Returns the number of rows deleted, or 0 if another node holds the lock.
+     */
+    public long purge() {
+        Long deleted = jdbcTemplate.execute((ConnectionCallback<Long>) this::purgeWithLock);
+        return deleted == null ? 0 : deleted;
+    }
+
+    private long purgeWithLock(Connection connection) throws SQLException {
+        if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)")) {
+            log.debug("Session purge skipped, another node holds the lock");
+            return 0;
+        }
+        try {
+            return deleteInChunks(connection);
+        } finally {
+            advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+        }
+    }
+
+    private long deleteInChunks(Connection connection) throws SQLException {
+        Instant now = Instant.now();
+        long startNanos = System.nanoTime();
+        long total = 0;
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_CHUNK_SQL)) {
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                delete.setObject(1, now.atOffset(ZoneOffset.UTC));
+                delete.setObject(2, now.minus(revokedRetention).atOffset(ZoneOffset.UTC));
+                delete.setInt(3, chunkSize);
+                int deleted = delete.executeUpdate();
+                total += deleted;
+                deletedCounter.increment(deleted);
+                if (deleted < chunkSize || !pause()) {
+                    break;
+                }
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        runTimer.record(Duration.ofNanos(elapsedNanos));
+        lastRowsPerSecond.set(elapsedNanos == 0 ? 0 : total * 1_000_000_000L / elapsedNanos);
+        if (total > 0) {
+            log.info("Purged {} expired sessions in {} ms", total, elapsedNanos / 1_000_000);
+        }
+        return total;
+    }
+
+    private boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, PURGE_LOCK_KEY);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private boolean pause() {
+        if (pauseMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for {@code user_sessions.last_used_at}.
+ * <p>
+ * Only the latest timestamp per session is kept; the buffer is written as one JDBC batch on a fixed
+ * delay, as soon as it reaches the size threshold, and once more on shutdown. Reaching the threshold
+ * only hands the flush to a background thread: {@link #touch} never waits for the database. A failed
+ * flush puts the entries back so the next one retries them, and threshold flushes pause until a
+ * scheduled flush succeeds again. The UPDATE never moves {@code last_used_at}
+ * backwards, so late or repeated flushes are harmless.
+ * <p>
+ * At most {@code maxPending} sessions are held: while the database is down, touches for sessions not
+ * already buffered are dropped and counted in {@code session.touch.dropped}. A lost touch only leaves
+ * {@code last_used_at} older than it should be.
+ */
+@Component
+@Slf4j
+public class SessionTouchBuffer {
+
+    // expires_at is the partition key: matching on it lets Postgres update a single partition.
+    private static final String TOUCH_SQL = "UPDATE user_sessions SET last_used_at = ? "
+            + "WHERE session_id = ? AND expires_at = ? AND (last_used_at IS NULL OR last_used_at < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int flushThreshold;
+    private final int maxPending;
+    private final Counter droppedCounter;
+    private final Map<SessionKey, Instant> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Executor flushExecutor;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private volatile boolean lastFlushFailed;
+
+    @Autowired
+    public SessionTouchBuffer(JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.session.touch.flush-threshold:1000}") int flushThreshold,
+                              @Value("${app.session.touch.max-pending:100000}") int maxPending) {
+        this(jdbcTemplate, meterRegistry, flushThreshold, maxPending,
+                Executors.newSingleThreadExecutor(new CustomizableThreadFactory("session-touch-flush-")));
+    }
+
+    SessionTouchBuffer(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, int flushThreshold, int maxPending,
+                       Executor flushExecutor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushExecutor = flushExecutor;
+        this.flushThreshold = flushThreshold;
+        this.maxPending = maxPending;
+        this.droppedCounter = Counter.builder("session.touch.dropped")
+                .description("Session touches dropped because the buffer was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param expiresAt the session's expiry (its refresh token's {@code exp}), used for partition pruning
+     */
+    public void touch(String sessionId, Instant expiresAt, Instant usedAt) {
+        buffer(new SessionKey(sessionId, expiresAt), usedAt);
+        // At most one threshold flush is queued or running; the caller never runs it.
+        if (pending.size() >= flushThreshold && !lastFlushFailed && flushQueued.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    try {
+                        flush();
+                    } finally {
+                        flushQueued.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down: drain() writes what is left.
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.session.touch.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            doFlush();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void drain() {
+        if (flushExecutor instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+        flush();
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private void doFlush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<SessionKey, Instant>> taken = new ArrayList<>();
+        for (Map.Entry<SessionKey, Instant> entry : pending.entrySet()) {
+            // Only take entries nobody updated in the meantime; newer ones wait for the next flush.
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                taken.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>(taken.size());
+        for (Map.Entry<SessionKey, Instant> entry : taken) {
+            // Bind like Hibernate binds Instant (UTC OffsetDateTime) so both paths agree on the stored value.
+            OffsetDateTime usedAt = entry.getValue().atOffset(ZoneOffset.UTC);
+            batch.add(new Object[]{usedAt, entry.getKey().sessionId(),
+                    entry.getKey().expiresAt().atOffset(ZoneOffset.UTC), usedAt});
+        }
+        try {
+            jdbcTemplate.batchUpdate(TOUCH_SQL, batch);
+            lastFlushFailed = false;
+            log.debug("Flushed {} session touches", batch.size());
+        } catch (DataAccessException e) {
+            lastFlushFailed = true;
+            log.warn("Session touch flush failed, retrying {} entries later: {}", taken.size(), e.getMessage());
+            taken.forEach(entry -> buffer(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Updates of sessions already buffered always go through; new sessions only while there is room.
+     * The size check is not atomic with the insert, so concurrent callers can overshoot by a few.
+     */
+    private void buffer(SessionKey key, Instant usedAt) {
+        if (pending.size() >= maxPending && !pending.containsKey(key)) {
+            droppedCounter.increment();
+            return;
+        }
+        pending.merge(key, usedAt, SessionTouchBuffer::latest);
+    }
+
+    private static Instant latest(Instant current, Instant next) {
+        return next.isAfter(current) ? next : current;
+    }
+
+    private record SessionKey(String sessionId, Instant expiresAt) {
+    }
+}
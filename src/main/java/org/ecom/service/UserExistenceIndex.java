@@ -0,0 +1,218 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.ecom.util.BloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * In-memory Bloom filters over every username and email, consulted before the signup and update
+ * uniqueness queries. A definite miss skips the database; a possible hit falls through to an
+ * {@code exists} query.
+ * <p>
+ * The filters are built at startup by streaming the users table and rebuilt periodically (Bloom
+ * filters cannot forget, so deleted or renamed values only cost false positives until then). New
+ * values are added locally and published on {@link #UPDATE_CHANNEL} for the other nodes. Pub/sub
+ * delivers at most once, so a node that missed an update can report a taken value as free until its
+ * next rebuild; the unique indexes on {@code users.username} and {@code users.email} reject the
+ * insert in that case. Until the first build finishes every lookup goes to the database.
+ */
+@Component
+@Slf4j
+public class UserExistenceIndex {
+
+    public static final String UPDATE_CHANNEL = "user:exists:add";
+
+    private static final String USERNAME_PREFIX = "u:";
+    private static final String EMAIL_PREFIX = "e:";
+    private static final String SCAN_SQL = "SELECT username, email FROM users";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transactionOperations;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final int fetchSize;
+    private final Counter skipped;
+    private final Counter queried;
+    private final Counter falsePositives;
+
+    private volatile Filters current;
+    // Set while a rebuild scans the table so concurrent adds reach both the old and the new filters.
+    private volatile Filters building;
+
+    public UserExistenceIndex(JdbcTemplate jdbcTemplate,
+                              TransactionOperations transactionOperations,
+                              StringRedisTemplate stringRedisTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.user.exists-filter.expected-insertions:1000000}") long expectedInsertions,
+                              @Value("${app.user.exists-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                              @Value("${app.user.exists-filter.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionOperations = transactionOperations;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.fetchSize = fetchSize;
+        this.skipped = checks(meterRegistry, "skipped");
+        this.queried = checks(meterRegistry, "queried");
+        this.falsePositives = checks(meterRegistry, "false_positive");
+        filterGauge(meterRegistry, "user.exists.filter.bytes", "username", filter -> filter.usernames().memoryBytes());
+        filterGauge(meterRegistry, "user.exists.filter.bytes", "email", filter -> filter.emails().memoryBytes());
+        filterGauge(meterRegistry, "user.exists.filter.expected_fpp", "username",
+                filter -> filter.usernames().expectedFalsePositiveRate());
+        filterGauge(meterRegistry, "user.exists.filter.expected_fpp", "email",
+                filter -> filter.emails().expectedFalsePositiveRate());
+    }
+
+    public boolean mightContainUsername(String username) {
+        Filters filters = current;
+        return record(filters == null || filters.usernames().mightContain(username));
+    }
+
+    public boolean mightContainEmail(String email) {
+        Filters filters = current;
+        return record(filters == null || filters.emails().mightContain(email));
+    }
+
+    /**
+     * Called when a possible hit turned out to be absent in the database.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Adds a new or changed user's values here and on every other node.
+     */
+    public void add(String username, String email) {
+        addAll(username == null ? List.of() : List.of(username), email == null ? List.of() : List.of(email));
+    }
+
+    /**
+     * Adds many values here and on every other node with a single message, e.g. one import batch.
+     */
+    public void addAll(Collection<String> usernames, Collection<String> emails) {
+        StringJoiner message = new StringJoiner("\n");
+        for (String username : usernames) {
+            addLocally(username, null);
+            message.add(USERNAME_PREFIX + username);
+        }
+        for (String email : emails) {
+            addLocally(null, email);
+            message.add(EMAIL_PREFIX + email);
+        }
+        if (message.length() == 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(UPDATE_CHANNEL, message.toString());
+        } catch (DataAccessException e) {
+            // Peers catch up at their next rebuild; the unique indexes reject duplicates meanwhile.
+            log.warn("Could not publish user existence update: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a message from {@link #UPDATE_CHANNEL}, published by this or another node: one
+     * prefixed value per line (usernames and emails cannot contain line breaks).
+     */
+    public void handleUpdate(String message) {
+        for (String value : message.split("\n")) {
+            if (value.startsWith(USERNAME_PREFIX)) {
+                addLocally(value.substring(USERNAME_PREFIX.length()), null);
+            } else if (value.startsWith(EMAIL_PREFIX)) {
+                addLocally(null, value.substring(EMAIL_PREFIX.length()));
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.user.exists-filter.rebuild-interval-ms:3600000}",
+            initialDelayString = "${app.user.exists-filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        Filters next = new Filters(new BloomFilter(expectedInsertions, falsePositiveRate),
+                new BloomFilter(expectedInsertions, falsePositiveRate));
+        building = next;
+        long started = System.nanoTime();
+        try {
+            // Postgres only streams with a cursor inside a transaction.
+            transactionOperations.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SCAN_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, (RowCallbackHandler) rs -> next.add(rs.getString(1), rs.getString(2))));
+            current = next;
+            log.info("User existence filters built: {} usernames, {} bytes each, in {} ms",
+                    next.usernames().insertions(), next.usernames().memoryBytes(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (DataAccessException e) {
+            log.warn("User existence filter rebuild failed, keeping the previous one: {}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    private void addLocally(String username, String email) {
+        Filters filters = current;
+        if (filters != null) {
+            filters.add(username, email);
+        }
+        Filters inProgress = building;
+        if (inProgress != null) {
+            inProgress.add(username, email);
+        }
+    }
+
+    private boolean record(boolean possibleHit) {
+        (possibleHit ? queried : skipped).increment();
+        return possibleHit;
+    }
+
+    private Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("user.exists.checks")
+                .description("Username/email existence checks by outcome of the Bloom filter")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void filterGauge(MeterRegistry meterRegistry, String name, String filter, ToDoubleFunction<Filters> value) {
+        Gauge.builder(name, this, index -> index.current == null ? 0 : value.applyAsDouble(index.current))
+                .tag("filter", filter)
+                .register(meterRegistry);
+    }
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {
+        void add(String username, String email) {
+            if (username != null) {
+                usernames.put(username);
+            }
+            if (email != null) {
+                emails.put(email);
+            }
+        }
+    }
+}
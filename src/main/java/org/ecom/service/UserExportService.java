@@ -0,0 +1,210 @@
+package org.ecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.ecom.dto.UserResponseDto;
+import org.ecom.exception.BusinessException;
+import org.ecom.mapper.UserMapper;
+import org.ecom.model.Role;
+import org.ecom.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams every user to an output stream, one row at a time, straight from a forward-only JDBC cursor.
+ * <p>
+ * Postgres only uses a server-side cursor when autocommit is off, hence the read-only transaction;
+ * rows then arrive {@code app.user.export.fetch-size} at a time and the heap holds one fetch batch
+ * regardless of table size. Writes block when the client reads slowly, which stops further fetches
+ * (backpressure). A write failure (client gone) aborts the query and closes the cursor.
+ * <p>
+ * That transaction holds a pool connection for the whole download, so exports have their own budget:
+ * at most {@code app.user.export.max-concurrent} run at once (others get 429), and the transaction sets
+ * {@code idle_in_transaction_session_timeout}. A client that stalls longer than
+ * {@code app.user.export.idle-timeout-ms} gets its session ended by Postgres, and the connection is freed.
+ */
+@Service
+@Slf4j
+public class UserExportService {
+
+    private static final String EXPORT_SQL = "SELECT u.id, u.username, r.type FROM users u "
+            + "JOIN role r ON r.id = u.role_id ORDER BY u.id";
+
+    @Getter
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Where the export goes. Opened only once an export slot is free, so a rejected export can still
+     * answer with an error body.
+     */
+    @FunctionalInterface
+    public interface Target {
+        OutputStream open() throws IOException;
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations readOnlyTransaction;
+    private final UserMapper userMapper;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final long idleTimeoutMs;
+    private final Semaphore slots;
+
+    @Autowired
+    public UserExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             UserMapper userMapper, ObjectMapper objectMapper,
+                             @Value("${app.user.export.fetch-size:1000}") int fetchSize,
+                             @Value("${app.user.export.max-concurrent:2}") int maxConcurrent,
+                             @Value("${app.user.export.idle-timeout-ms:30000}") long idleTimeoutMs) {
+        this(jdbcTemplate, readOnly(transactionManager), userMapper, objectMapper, fetchSize, maxConcurrent, idleTimeoutMs);
+    }
+
+    UserExportService(JdbcTemplate jdbcTemplate, TransactionOperations readOnlyTransaction, UserMapper userMapper,
+                      ObjectMapper objectMapper, int fetchSize, int maxConcurrent, long idleTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = readOnlyTransaction;
+        this.userMapper = userMapper;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.slots = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Writes all users to {@code target} and returns how many were written. Stops early, without
+     * failing, when the client disconnects or stalls past the idle timeout.
+     */
+    public long export(Format format, Target target) {
+        if (!slots.tryAcquire()) {
+            throw new BusinessException("Too many exports in progress, try again later", HttpStatus.TOO_MANY_REQUESTS);
+        }
+        try {
+            OutputStream out = target.open();
+            Long written = readOnlyTransaction.execute(status -> stream(format, out));
+            return written == null ? 0 : written;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open export output", e);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private long stream(Format format, OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long[] written = {0};
+        try {
+            if (idleTimeoutMs > 0) {
+                // Value is a configured number, not user input; SET does not take bind parameters.
+                jdbcTemplate.execute("SET LOCAL idle_in_transaction_session_timeout = " + idleTimeoutMs);
+            }
+            if (format == Format.CSV) {
+                writer.write("username,role\n");
+            }
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                writeRow(writer, format, userMapper.toDto(toUser(rs)));
+                // Push each fetch batch out rather than holding it in the writer buffer.
+                if (++written[0] % fetchSize == 0) {
+                    flush(writer);
+                }
+            });
+            writer.flush();
+        } catch (IOException | UncheckedIOException e) {
+            log.info("User export stopped after {} rows, client went away: {}", written[0], e.getMessage());
+        } catch (DataAccessException e) {
+            // Most likely the idle timeout ended the session while the client was not reading.
+            log.warn("User export stopped after {} rows, query failed: {}", written[0], e.getMessage());
+        }
+        return written[0];
+    }
+
+    private static TransactionOperations readOnly(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private User toUser(ResultSet rs) throws SQLException {
+        Role role = new Role();
+        role.setType(rs.getString(3));
+        User user = new User();
+        user.setId(rs.getLong(1));
+        user.setUsername(rs.getString(2));
+        user.setRole(role);
+        return user;
+    }
+
+    private void writeRow(Writer writer, Format format, UserResponseDto dto) {
+        try {
+            if (format == Format.CSV) {
+                writer.write(csv(dto.getUsername()));
+                writer.write(',');
+                writer.write(csv(dto.getRole()));
+            } else {
+                writer.write(objectMapper.writeValueAsString(dto));
+            }
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush(Writer writer) {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quotes a CSV cell, and neutralises spreadsheet formulas: a cell starting with {@code = + - @}
+     * (or a tab / carriage return) gets a leading {@code '} so spreadsheet apps show it as text.
+     */
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,459 @@
+package org.ecom.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.ecom.config.BoundedPasswordEncoder;
+import org.ecom.dto.UserImportJobDto;
+import org.ecom.dto.UserImportReportDto;
+import org.ecom.dto.UserRequestDto;
+import org.ecom.exception.BusinessException;
+import org.ecom.model.Role;
+import org.ecom.model.User;
+import org.ecom.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Creates users from a CSV ({@code username,email,password} header) or NDJSON stream.
+ * <p>
+ * {@link #startImport} only spools the upload to a temporary file and checks the CSV header; the rows
+ * are imported on a dedicated single-thread executor, never on the request thread. The job state,
+ * including the report so far, is kept in Redis for a day under {@code import:job:<id>} and updated
+ * after every batch, so any node can answer {@link #getJob}.
+ * <p>
+ * Input is read line by line and handled in batches of {@code app.user.import.batch-size} rows:
+ * uniqueness is checked with one query per column per batch, passwords are hashed in parallel on a
+ * dedicated pool (separate from the login hashing pool, so an import cannot starve logins), and the
+ * batch is inserted in one transaction through Hibernate's JDBC batching. Rows that fail validation
+ * or uniqueness are reported by line and skipped; the rest of the import continues. One import runs
+ * per node at a time.
+ */
+@Service
+@Slf4j
+public class UserImportService {
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    private static final String DEFAULT_ROLE = "USER";
+    private static final String CSV_HEADER = "username,email,password";
+    private static final String JOB_KEY_PREFIX = "import:job:";
+    private static final Duration JOB_TTL = Duration.ofDays(1);
+
+    private final UserRepository userRepository;
+    private final RoleRegistry roleRegistry;
+    private final PasswordEncoder passwordEncoder;
+    private final UserExistenceIndex userExistenceIndex;
+    private final TransactionOperations transactionOperations;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ExecutorService hashingExecutor;
+    private final ExecutorService importExecutor;
+    private final int batchSize;
+    private final Semaphore running = new Semaphore(1);
+
+    public UserImportService(UserRepository userRepository,
+                             RoleRegistry roleRegistry,
+                             PasswordEncoder passwordEncoder,
+                             UserExistenceIndex userExistenceIndex,
+                             TransactionOperations transactionOperations,
+                             Validator validator,
+                             ObjectMapper objectMapper,
+                             StringRedisTemplate stringRedisTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.user.import.batch-size:1000}") int batchSize,
+                             @Value("${app.user.import.hash-threads:0}") int hashThreads) {
+        this(userRepository, roleRegistry, passwordEncoder, userExistenceIndex, transactionOperations, validator, objectMapper,
+                stringRedisTemplate,
+                ExecutorServiceMetrics.monitor(meterRegistry, Executors.newFixedThreadPool(
+                        hashThreads > 0 ? hashThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                        new CustomizableThreadFactory("user-import-hash-")), "user.import.hashing"),
+                ExecutorServiceMetrics.monitor(meterRegistry, Executors.newSingleThreadExecutor(
+                        new CustomizableThreadFactory("user-import-")), "user.import"),
+                batchSize);
+    }
+
+    UserImportService(UserRepository userRepository, RoleRegistry roleRegistry, PasswordEncoder passwordEncoder,
+                      UserExistenceIndex userExistenceIndex, TransactionOperations transactionOperations, Validator validator, ObjectMapper objectMapper,
+                      StringRedisTemplate stringRedisTemplate, ExecutorService hashingExecutor, ExecutorService importExecutor,
+                      int batchSize) {
+        this.userRepository = userRepository;
+        this.roleRegistry = roleRegistry;
+        // Hash directly on the import pool; going through the bounded login encoder would queue behind logins.
+        this.passwordEncoder = passwordEncoder instanceof BoundedPasswordEncoder bounded
+                ? bounded.unbounded()
+                : passwordEncoder;
+        this.userExistenceIndex = userExistenceIndex;
+        this.transactionOperations = transactionOperations;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.hashingExecutor = hashingExecutor;
+        this.importExecutor = importExecutor;
+        this.batchSize = batchSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        importExecutor.shutdownNow();
+        hashingExecutor.shutdownNow();
+    }
+
+    /**
+     * Accepts an import: the body is copied to a temporary file here, and the rows are imported on
+     * the import executor. Returns the job as accepted; poll {@link #getJob} for progress and the report.
+     */
+    public UserImportJobDto startImport(Format format, InputStream input) {
+        if (!running.tryAcquire()) {
+            throw new BusinessException("Another user import is already running", HttpStatus.TOO_MANY_REQUESTS);
+        }
+        Path spool = null;
+        try {
+            Role role = roleRegistry.findByType(DEFAULT_ROLE)
+                    .orElseThrow(() -> new BusinessException("Default role USER not found", HttpStatus.INTERNAL_SERVER_ERROR));
+            spool = spool(input);
+            if (format == Format.CSV) {
+                checkCsvHeader(spool);
+            }
+            String id = UUID.randomUUID().toString();
+            Instant startedAt = Instant.now();
+            UserImportJobDto job = runningJob(id, startedAt);
+            job.setReport(new UserImportReportDto());
+            saveJob(job);
+            Path file = spool;
+            importExecutor.execute(() -> run(job, format, file, role));
+            return runningJob(id, startedAt);
+        } catch (RuntimeException e) {
+            deleteQuietly(spool);
+            running.release();
+            throw e;
+        }
+    }
+
+    public UserImportJobDto getJob(String id) {
+        String json = stringRedisTemplate.opsForValue().get(JOB_KEY_PREFIX + id);
+        if (json == null) {
+            throw new BusinessException("Import job not found", HttpStatus.NOT_FOUND);
+        }
+        try {
+            return objectMapper.readValue(json, UserImportJobDto.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable import job " + id, e);
+        }
+    }
+
+    private void run(UserImportJobDto job, Format format, Path file, Role role) {
+        try (InputStream input = Files.newInputStream(file)) {
+            readAndImport(format, input, role, job);
+            job.setStatus(UserImportJobDto.Status.COMPLETED);
+        } catch (IOException | RuntimeException e) {
+            log.error("User import {} failed", job.getId(), e);
+            job.setStatus(UserImportJobDto.Status.FAILED);
+            job.setError(e instanceof BusinessException ? e.getMessage() : "User import failed");
+        } finally {
+            job.setFinishedAt(Instant.now());
+            saveJob(job);
+            deleteQuietly(file);
+            running.release();
+        }
+    }
+
+    private void readAndImport(Format format, InputStream input, Role role, UserImportJobDto job) {
+        UserImportReportDto report = job.getReport();
+        Set<String> seenUsernames = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+        List<Row> batch = new ArrayList<>(batchSize);
+        long started = System.nanoTime();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+            if (format == Format.CSV) {
+                // Header already checked by startImport.
+                reader.readLine();
+                lineNumber++;
+            }
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                Row row = parse(format, line, lineNumber, report);
+                if (row == null || !isValid(row, report)) {
+                    continue;
+                }
+                if (!seenUsernames.add(row.username())) {
+                    report.addError(lineNumber, row.username(), "Duplicate username in input");
+                    continue;
+                }
+                if (!seenEmails.add(row.email())) {
+                    report.addError(lineNumber, row.username(), "Duplicate email in input");
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    importBatch(batch, role, report);
+                    batch.clear();
+                    saveJob(job);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read import input", e);
+        }
+        if (!batch.isEmpty()) {
+            importBatch(batch, role, report);
+        }
+
+        log.info("User import {} finished: imported={} failed={} in {} ms", job.getId(), report.getImported(),
+                report.getFailed(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static Path spool(InputStream input) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("user-import-", ".tmp");
+            Files.copy(input, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException("Could not read import input", e);
+        }
+    }
+
+    private static void checkCsvHeader(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.strip().equals(CSV_HEADER)) {
+                throw new BusinessException("CSV header must be username,email,password", HttpStatus.BAD_REQUEST);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read import input", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete import spool file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static UserImportJobDto runningJob(String id, Instant startedAt) {
+        UserImportJobDto job = new UserImportJobDto();
+        job.setId(id);
+        job.setStatus(UserImportJobDto.Status.RUNNING);
+        job.setStartedAt(startedAt);
+        return job;
+    }
+
+    private void saveJob(UserImportJobDto job) {
+        try {
+            stringRedisTemplate.opsForValue().set(JOB_KEY_PREFIX + job.getId(), objectMapper.writeValueAsString(job), JOB_TTL);
+        } catch (JsonProcessingException | DataAccessException e) {
+            // The import itself goes on; only its visible status lags until the next save.
+            log.warn("Could not save import job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private Row parse(Format format, String line, long lineNumber, UserImportReportDto report) {
+        try {
+            if (format == Format.CSV) {
+                List<String> fields = parseCsvLine(line);
+                if (fields.size() != 3) {
+                    report.addError(lineNumber, null, "Expected 3 columns");
+                    return null;
+                }
+                return new Row(lineNumber, fields.get(0), fields.get(1), fields.get(2));
+            }
+            JsonNode node = objectMapper.readTree(line);
+            return new Row(lineNumber, text(node, "username"), text(node, "email"), text(node, "password"));
+        } catch (IOException | IllegalArgumentException e) {
+            report.addError(lineNumber, null, "Malformed row");
+            return null;
+        }
+    }
+
+    private boolean isValid(Row row, UserImportReportDto report) {
+        UserRequestDto dto = new UserRequestDto(row.username(), row.email(), row.password(), row.password());
+        Set<ConstraintViolation<UserRequestDto>> violations = validator.validate(dto);
+        if (violations.isEmpty()) {
+            return true;
+        }
+        report.addError(row.line(), row.username(), violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; ")));
+        return false;
+    }
+
+    private void importBatch(List<Row> batch, Role role, UserImportReportDto report) {
+        List<Row> fresh = withoutExisting(batch, report);
+        if (fresh.isEmpty()) {
+            return;
+        }
+        List<User> users = hashAll(fresh, role);
+        try {
+            insert(users);
+        } catch (DataIntegrityViolationException e) {
+            // Someone created one of these users since the check: re-check and retry the rest once.
+            log.debug("Import batch hit a unique constraint, retrying: {}", e.getMessage());
+            List<Row> retry = withoutExisting(fresh, report);
+            Set<String> retryUsernames = retry.stream().map(Row::username).collect(Collectors.toSet());
+            List<User> retryUsers = users.stream()
+                    .filter(user -> retryUsernames.contains(user.getUsername()))
+                    .toList();
+            // Ids were assigned by the failed flush; clear them so saveAll persists instead of merging.
+            retryUsers.forEach(user -> user.setId(null));
+            try {
+                insert(retryUsers);
+                users = retryUsers;
+            } catch (DataIntegrityViolationException again) {
+                retry.forEach(row -> report.addError(row.line(), row.username(), "Could not insert user"));
+                return;
+            }
+        }
+        userExistenceIndex.addAll(users.stream().map(User::getUsername).toList(),
+                users.stream().map(User::getEmail).filter(Objects::nonNull).toList());
+        report.addImported(users.size());
+    }
+
+    private List<Row> withoutExisting(List<Row> rows, UserImportReportDto report) {
+        Set<String> takenUsernames = new HashSet<>(userRepository.findExistingUsernames(
+                rows.stream().map(Row::username).toList()));
+        Set<String> takenEmails = new HashSet<>(userRepository.findExistingEmails(
+                rows.stream().map(Row::email).toList()));
+        List<Row> fresh = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (takenUsernames.contains(row.username())) {
+                report.addError(row.line(), row.username(), "Username already exists");
+            } else if (takenEmails.contains(row.email())) {
+                report.addError(row.line(), row.username(), "Email already exists");
+            } else {
+                fresh.add(row);
+            }
+        }
+        return fresh;
+    }
+
+    private List<User> hashAll(List<Row> rows, Role role) {
+        List<Future<String>> hashes = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            hashes.add(hashingExecutor.submit(() -> passwordEncoder.encode(row.password())));
+        }
+        List<User> users = new ArrayList<>(rows.size());
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                User user = new User();
+                user.setUsername(row.username());
+                user.setEmail(row.email());
+                user.setPassword(hashes.get(i).get());
+                user.setRole(role);
+                users.add(user);
+            }
+        } catch (InterruptedException e) {
+            hashes.forEach(hash -> hash.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new BusinessException("User import was interrupted", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            hashes.forEach(hash -> hash.cancel(true));
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+        return users;
+    }
+
+    private void insert(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        // Pooled sequence ids plus hibernate.jdbc.batch_size turn this into multi-row INSERTs.
+        transactionOperations.executeWithoutResult(status -> userRepository.saveAll(users));
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    /**
+     * Splits one CSV line (RFC 4180 quoting, no embedded line breaks).
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private record Row(long line, String username, String email, String password) {
+    }
+}
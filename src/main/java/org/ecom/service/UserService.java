@@ -1,31 +1,67 @@
 package org.ecom.service;
 
+import org.ecom.dto.CursorPageDto;
 import org.ecom.dto.UserRequestDto;
+import org.ecom.dto.UserViewDto;
 import org.ecom.exception.BusinessException;
 import org.ecom.mapper.UserMapper;
 import org.ecom.model.Role;
 import org.ecom.model.User;
-import org.ecom.repository.RoleRepository;
 import org.ecom.repository.UserRepository;
+import org.ecom.repository.UserViewRepository;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class UserService extends BaseServiceImpl<User, Long>{
+    // V6 index; the username constraint is the name Postgres gave the V1 UNIQUE column constraint.
+    static final String EMAIL_UNIQUE_INDEX = "uk_users_email";
+    static final String USERNAME_UNIQUE_CONSTRAINT = "users_username_key";
+
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final RoleRegistry roleRegistry;
     private final UserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
+    private final RedisAuthService redisAuthService;
+    private final UserExistenceIndex userExistenceIndex;
+    private final UserSessionService userSessionService;
+    private final RefreshSessionStore refreshSessionStore;
+
+    @Value("${app.user.list.max-page-size:100}")
+    private int maxPageSize = 100;
 
-    protected UserService(UserRepository userRepository, RoleRepository roleRepository, UserMapper userMapper, PasswordEncoder passwordEncoder) {
+    protected UserService(UserRepository userRepository, RoleRegistry roleRegistry, UserMapper userMapper,
+                          PasswordEncoder passwordEncoder, RedisAuthService redisAuthService,
+                          UserExistenceIndex userExistenceIndex, UserSessionService userSessionService,
+                          RefreshSessionStore refreshSessionStore) {
         super(userRepository);
         this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
+        this.roleRegistry = roleRegistry;
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
+        this.redisAuthService = redisAuthService;
+        this.userExistenceIndex = userExistenceIndex;
+        this.userSessionService = userSessionService;
+        this.refreshSessionStore = refreshSessionStore;
     }
 
     @Override
@@ -36,12 +72,48 @@ public class UserService extends BaseServiceImpl<User, Long>{
         }
         return userRepository.save(entity);
     }
+    // The Bloom filter answers most misses (typical of new signups) without a query.
     public boolean existUsername(String username){
-        return userRepository.findByUsername(username).isPresent();
+        return userExistenceIndex.mightContainUsername(username) && confirm(userRepository.existsByUsername(username));
     }
 
     public boolean existEmail(String email){
-        return userRepository.findByEmail(email).isPresent();
+        return userExistenceIndex.mightContainEmail(email) && confirm(userRepository.existsByEmail(email));
+    }
+
+    // The existence filter can miss a value another node registered moments ago; the unique indexes
+    // catch it, and flushing here turns that into the same 400 as the pre-check.
+    private User saveUnique(User user) {
+        try {
+            User saved = save(user);
+            userRepository.flush();
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            String constraint = violatedConstraint(e);
+            if (EMAIL_UNIQUE_INDEX.equalsIgnoreCase(constraint)) {
+                throw new BusinessException("Email already exists", HttpStatus.BAD_REQUEST);
+            }
+            if (USERNAME_UNIQUE_CONSTRAINT.equalsIgnoreCase(constraint)) {
+                throw new BusinessException("Username already exists", HttpStatus.BAD_REQUEST);
+            }
+            throw e;
+        }
+    }
+
+    private static String violatedConstraint(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                return violation.getConstraintName();
+            }
+        }
+        return null;
+    }
+
+    private boolean confirm(boolean exists) {
+        if (!exists) {
+            userExistenceIndex.recordFalsePositive();
+        }
+        return exists;
     }
 
     public User createUser(UserRequestDto userDto){
@@ -57,11 +129,13 @@ public class UserService extends BaseServiceImpl<User, Long>{
         }
 
         // Public signup always receives USER role from server-side to prevent privilege escalation.
-        Role role = roleRepository.findByType("USER")
+        Role role = roleRegistry.findByType("USER")
                 .orElseThrow(() -> new BusinessException("Default role USER not found", HttpStatus.INTERNAL_SERVER_ERROR));
         User user = userMapper.toEntity(userDto);
         user.setRole(role);
-        return save(user);
+        User saved = saveUnique(user);
+        userExistenceIndex.add(saved.getUsername(), saved.getEmail());
+        return saved;
     }
 
     public User updateUser(Long id, UserRequestDto userDto) {
@@ -82,23 +156,138 @@ public class UserService extends BaseServiceImpl<User, Long>{
             throw new BusinessException("Email already exists", HttpStatus.BAD_REQUEST);
         }
 
+        String previousUsername = user.getUsername();
         user.setUsername(userDto.getUsername());
         user.setEmail(userDto.getEmail());
         // Only update password if provided (OAuth users may not have passwords)
-        if (userDto.getPassword() != null && !userDto.getPassword().isBlank()) {
+        boolean passwordChanged = userDto.getPassword() != null && !userDto.getPassword().isBlank();
+        if (passwordChanged) {
             user.setPassword(userDto.getPassword());
         }
-        return save(user);
+        User saved = saveUnique(user);
+        userExistenceIndex.add(saved.getUsername(), saved.getEmail());
+        if (passwordChanged || !previousUsername.equals(saved.getUsername())) {
+            // Tokens issued under the old credentials must stop working, even in stateless auth mode.
+            revokeSessions(saved.getId(), previousUsername);
+            redisAuthService.apply(new AuthCacheMutation()
+                    .revokeUserTokens(previousUsername)
+                    .evictUserDetails(previousUsername));
+        }
+        return saved;
     }
 
     public void deleteUser(Long id) {
-        if (!userRepository.existsById(id)) {
-            throw new BusinessException("User not found", HttpStatus.NOT_FOUND);
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new BusinessException("User not found", HttpStatus.NOT_FOUND));
+        revokeSessions(user.getId(), user.getUsername());
+        userRepository.delete(user);
+        redisAuthService.apply(new AuthCacheMutation()
+                .revokeUserTokens(user.getUsername())
+                .evictUserDetails(user.getUsername()));
+    }
+
+    // Refresh sessions live in Postgres or Redis depending on app.security.refresh.redis-sessions (and
+    // in both around a switch), so both stores are revoked.
+    private void revokeSessions(Long userId, String username) {
+        userSessionService.revokeUserSessions(userId);
+        refreshSessionStore.revokeUser(username);
+    }
+
+    /**
+     * One user projected to the requested {@code fields}, without loading the entity.
+     */
+    @Transactional(readOnly = true)
+    public Optional<UserViewDto> findView(long id, Set<UserViewDto.Field> fields) {
+        return userRepository.findViewById(id, fields);
+    }
+
+    /**
+     * Offset page ordered by id, at most {@code app.user.list.max-page-size} rows, with the total count.
+     * A page whose offset does not fit in an int (the JPA limit) is rejected with 400; deep pages
+     * should use {@link #findAfter} instead.
+     */
+    @Transactional(readOnly = true)
+    public Page<UserViewDto> findAll(int page, int size, Set<UserViewDto.Field> fields) {
+        Slice<UserViewDto> slice = findSlice(page, size, fields);
+        return new PageImpl<>(slice.getContent(), slice.getPageable(), userRepository.count());
+    }
+
+    /**
+     * As {@link #findAll}, but without the COUNT query: the result only tells whether a next page exists.
+     */
+    @Transactional(readOnly = true)
+    public Slice<UserViewDto> findSlice(int page, int size, Set<UserViewDto.Field> fields) {
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), pageSize(size), Sort.by("id"));
+        if (pageRequest.getOffset() > Integer.MAX_VALUE) {
+            throw new BusinessException("Page too deep; use the cursor endpoint", HttpStatus.BAD_REQUEST);
         }
-        userRepository.deleteById(id);
+        // One extra row tells whether a next page exists.
+        List<UserViewRepository.UserView> rows = userRepository.findViews(0, pageRequest.getOffset(),
+                pageRequest.getPageSize() + 1, fields);
+        boolean hasNext = rows.size() > pageRequest.getPageSize();
+        List<UserViewDto> items = (hasNext ? rows.subList(0, pageRequest.getPageSize()) : rows).stream()
+                .map(UserViewRepository.UserView::user)
+                .toList();
+        return new SliceImpl<>(items, pageRequest, hasNext);
     }
 
-    public Page<User> findAll(Pageable pageable) {
-        return userRepository.findAll(pageable);
+    /**
+     * Keyset page of users with id greater than the one encoded in {@code cursor} (from the start when
+     * null). {@code nextCursor} is set when more rows follow.
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDto<UserViewDto> findAfter(String cursor, int size, boolean withTotal,
+                                                    Set<UserViewDto.Field> fields) {
+        int limit = pageSize(size);
+        long afterId = cursor == null || cursor.isBlank() ? 0 : decodeCursor(cursor);
+        List<UserViewRepository.UserView> rows = userRepository.findViews(afterId, 0, limit + 1, fields);
+        boolean hasNext = rows.size() > limit;
+        List<UserViewRepository.UserView> page = hasNext ? rows.subList(0, limit) : rows;
+        String nextCursor = hasNext ? encodeCursor(page.get(page.size() - 1).id()) : null;
+        return new CursorPageDto<>(page.stream().map(UserViewRepository.UserView::user).toList(), nextCursor,
+                withTotal ? userRepository.count() : null);
+    }
+
+    /**
+     * Parses a comma-separated {@code fields=} value; blank means every field, a list naming none
+     * (such as {@code ","}) is rejected.
+     */
+    public static Set<UserViewDto.Field> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return EnumSet.allOf(UserViewDto.Field.class);
+        }
+        Set<UserViewDto.Field> parsed = EnumSet.noneOf(UserViewDto.Field.class);
+        for (String name : fields.split(",")) {
+            try {
+                parsed.add(UserViewDto.Field.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("Unknown field: " + name.trim(), HttpStatus.BAD_REQUEST);
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new BusinessException("fields must name at least one field", HttpStatus.BAD_REQUEST);
+        }
+        return parsed;
+    }
+
+    private int pageSize(int requested) {
+        return Math.min(Math.max(requested, 1), maxPageSize);
+    }
+
+    static String encodeCursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("id:" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith("id:")) {
+                return Long.parseLong(decoded.substring(3));
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through: malformed Base64 or id (NumberFormatException is an IllegalArgumentException).
+        }
+        throw new BusinessException("Invalid cursor", HttpStatus.BAD_REQUEST);
     }
 }
@@ -4,6 +4,7 @@ import org.ecom.model.User;
 import org.ecom.model.UserSession;
 import org.ecom.repository.UserSessionRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -16,9 +17,14 @@ import java.util.Optional;
 public class UserSessionService {
 
     private final UserSessionRepository userSessionRepository;
+    private final SessionTouchBuffer sessionTouchBuffer;
+    private final SessionPurger sessionPurger;
 
-    public UserSessionService(UserSessionRepository userSessionRepository) {
+    public UserSessionService(UserSessionRepository userSessionRepository, SessionTouchBuffer sessionTouchBuffer,
+                              SessionPurger sessionPurger) {
         this.userSessionRepository = userSessionRepository;
+        this.sessionTouchBuffer = sessionTouchBuffer;
+        this.sessionPurger = sessionPurger;
     }
 
     public UserSession createSession(
@@ -43,31 +49,55 @@ public class UserSessionService {
         return userSessionRepository.save(session);
     }
 
-    public Optional<UserSession> findBySessionId(String sessionId) {
-        return userSessionRepository.findBySessionId(sessionId);
+    /**
+     * Session lookup by the {@code sid} and {@code exp} of its refresh token; the session's
+     * {@code expiresAt} is the token's expiry, which is also the partition key. The session's user
+     * and role are loaded in the same query.
+     */
+    public Optional<UserSession> findSession(String sessionId, Instant expiresAt) {
+        return userSessionRepository.findWithUserAndRole(sessionId, expiresAt);
     }
 
     public boolean isRefreshTokenMatch(UserSession session, String refreshToken) {
         return hashToken(refreshToken).equals(session.getRefreshTokenHash());
     }
 
-    public void revokeSession(String sessionId, String replacedBySessionId) {
-        userSessionRepository.revokeSession(sessionId, replacedBySessionId, Instant.now());
+    /**
+     * Returns {@code false} when the session was already revoked (or does not exist).
+     */
+    public boolean revokeSession(String sessionId, Instant expiresAt, String replacedBySessionId) {
+        return userSessionRepository.revokeSession(sessionId, expiresAt, replacedBySessionId, Instant.now()) > 0;
     }
 
     public void revokeFamily(String familyId) {
         userSessionRepository.revokeFamily(familyId, Instant.now());
     }
 
-    public void touchSession(String sessionId) {
-        userSessionRepository.touchSession(sessionId, Instant.now());
+    /**
+     * Revoke every live session of the user; returns how many were revoked.
+     */
+    @Transactional
+    public int revokeUserSessions(Long userId) {
+        return userSessionRepository.revokeUser(userId, Instant.now());
     }
 
-    public int purgeExpired() {
-        return userSessionRepository.deleteExpired(Instant.now());
+    /**
+     * Record that a session was used. Buffered and written in batches by {@link SessionTouchBuffer},
+     * so this is cheap enough to call on every authenticated request; {@code JwtAuthFilter} calls it
+     * for each access token that names its session.
+     */
+    public void touchSession(String sessionId, Instant expiresAt) {
+        sessionTouchBuffer.touch(sessionId, expiresAt, Instant.now());
     }
 
-    private String hashToken(String token) {
+    /**
+     * One chunked purge pass; normally run by {@link SessionPurger} on a schedule.
+     */
+    public long purgeExpired() {
+        return sessionPurger.purge();
+    }
+
+    static String hashToken(String token) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(token.getBytes(StandardCharsets.UTF_8));
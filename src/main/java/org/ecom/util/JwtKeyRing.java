@@ -0,0 +1,208 @@
+package org.ecom.util;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import lombok.extern.slf4j.Slf4j;
+import org.ecom.config.JwtProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * JWT signing keys derived from {@link JwtProperties}. Each secret gets a stable {@code kid}
+ * (a digest prefix of the secret) so verification can pick its key directly instead of trial-decoding.
+ * <p>
+ * With {@code app.jwt.keys-file} set, the secrets come from that file and can be rotated without a
+ * restart: update the file (e.g. a mounted secret), then {@link #requestReload()} re-reads it here
+ * and tells the other nodes to do the same over {@link #RELOAD_CHANNEL}.
+ */
+@Component
+@Slf4j
+public class JwtKeyRing {
+
+    public static final String RELOAD_CHANNEL = "jwt:keys:reload";
+
+    private final JwtProperties jwtProperties;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final JwtParser kidParser;
+
+    public JwtKeyRing(JwtProperties jwtProperties) {
+        this(jwtProperties, null);
+    }
+
+    @Autowired
+    public JwtKeyRing(JwtProperties jwtProperties, StringRedisTemplate stringRedisTemplate) {
+        this.jwtProperties = jwtProperties;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.kidParser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new KidResolver())
+                .build();
+        this.snapshot.set(build(configuredSecrets(), 1));
+    }
+
+    /**
+     * Re-read the configured secrets on this node. Without a keys file the properties cannot change
+     * at runtime, so the key set stays the same (only the generation moves).
+     */
+    public void reload() {
+        List<String> secrets = configuredSecrets();
+        Snapshot next = snapshot.updateAndGet(current -> build(secrets, current.generation() + 1));
+        log.info("JWT keys reloaded: signing kid {}, {} keys accepted", next.signingKid(), next.keysByKid().size());
+    }
+
+    /**
+     * Reloads here and on every other node (admin trigger).
+     */
+    public void requestReload() {
+        reload();
+        if (stringRedisTemplate == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(RELOAD_CHANNEL, "reload");
+        } catch (DataAccessException e) {
+            log.warn("Could not notify other nodes of JWT key reload: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the signing secret and the accepted previous secrets on this node.
+     */
+    public void reload(String secret, String previousSecrets) {
+        List<String> secrets = splitSecrets(secret, previousSecrets);
+        snapshot.updateAndGet(current -> build(secrets, current.generation() + 1));
+    }
+
+    public String signingKeyId() {
+        return snapshot.get().signingKid();
+    }
+
+    public SecretKey signingKey() {
+        Snapshot current = snapshot.get();
+        return current.keysByKid().get(current.signingKid());
+    }
+
+    /**
+     * Incremented on every reload; lets caches of verified tokens detect a key set change.
+     */
+    public long generation() {
+        return snapshot.get().generation();
+    }
+
+    /**
+     * Parser that selects the verification key from the {@code kid} header.
+     * Throws {@link MissingKeyIdException} for tokens signed before key ids were stamped.
+     */
+    JwtParser kidParser() {
+        return kidParser;
+    }
+
+    /**
+     * Per-key parsers in configured order (current secret first), for tokens without a {@code kid}.
+     */
+    List<JwtParser> legacyParsers() {
+        return snapshot.get().legacyParsers();
+    }
+
+    static String keyId(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private List<String> configuredSecrets() {
+        String keysFile = jwtProperties.getKeysFile();
+        if (keysFile == null || keysFile.isBlank()) {
+            return splitSecrets(jwtProperties.getSecret(), jwtProperties.getPreviousSecrets());
+        }
+        try {
+            return Files.readAllLines(Path.of(keysFile), StandardCharsets.UTF_8).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .distinct()
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read JWT keys file " + keysFile, e);
+        }
+    }
+
+    private static List<String> splitSecrets(String secret, String previousSecrets) {
+        String previous = previousSecrets == null ? "" : previousSecrets;
+        return Arrays.stream(((secret == null ? "" : secret) + "," + previous).split(","))
+                .map(String::trim)
+                .filter(s -> !s.isBlank())
+                .distinct()
+                .toList();
+    }
+
+    private static Snapshot build(List<String> secrets, long generation) {
+        if (secrets.isEmpty()) {
+            throw new IllegalStateException("No JWT signing keys configured");
+        }
+
+        Map<String, SecretKey> keysByKid = new LinkedHashMap<>();
+        List<JwtParser> legacyParsers = new ArrayList<>();
+        for (String s : secrets) {
+            SecretKey key = Keys.hmacShaKeyFor(s.getBytes(StandardCharsets.UTF_8));
+            keysByKid.put(keyId(s), key);
+            legacyParsers.add(Jwts.parserBuilder().setSigningKey(key).build());
+        }
+        return new Snapshot(generation, keyId(secrets.get(0)), Map.copyOf(keysByKid), List.copyOf(legacyParsers));
+    }
+
+    private record Snapshot(long generation, String signingKid, Map<String, SecretKey> keysByKid,
+                            List<JwtParser> legacyParsers) {
+    }
+
+    private class KidResolver extends SigningKeyResolverAdapter {
+        // jjwt 0.11 declares the header parameter as a raw JwsHeader; a parameterized one would not override.
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            String kid = header.getKeyId();
+            if (kid == null) {
+                throw new MissingKeyIdException();
+            }
+            SecretKey key = snapshot.get().keysByKid().get(kid);
+            if (key == null) {
+                throw new SignatureException("Unknown JWT key id");
+            }
+            return key;
+        }
+    }
+
+    static class MissingKeyIdException extends JwtException {
+        private static final long serialVersionUID = 1L;
+
+        MissingKeyIdException() {
+            super("JWT has no key id");
+        }
+    }
+}
@@ -1,62 +1,115 @@
 package org.ecom.util;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.SecurityException;
 import lombok.RequiredArgsConstructor;
 import org.ecom.config.JwtProperties;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class JwtUtil {
 
     private final JwtProperties jwtProperties;
+    private final JwtKeyRing keyRing;
 
     public String generateToken(String username, String role){
-        Date now = new Date();
+        return issueAccessToken(username, role).getToken();
+    }
+
+    /**
+     * Access token tied to the session of {@code refreshToken}, so requests can be recorded against it.
+     */
+    public String generateToken(String username, String role, ParsedToken refreshToken){
+        return issueAccessToken(username, role, refreshToken.getSessionId(), refreshToken.getExpiration()).getToken();
+    }
+
+    public String generateRefreshToken(String username, String role){
+        return generateRefreshToken(username, role, UUID.randomUUID().toString(), UUID.randomUUID().toString());
+    }
+
+    public String generateRefreshToken(String username, String role, String sessionId, String familyId){
+        return issueRefreshToken(username, role, sessionId, familyId).getToken();
+    }
+
+    /**
+     * Sign a new access token and return it together with its claims, so callers never parse what they just built.
+     */
+    public ParsedToken issueAccessToken(String username, String role) {
+        return issueAccessToken(username, role, null, null);
+    }
+
+    /**
+     * As {@link #issueAccessToken(String, String)}, carrying the refresh session's {@code sid} and its
+     * expiry ({@code sexp}, epoch seconds) when given.
+     */
+    public ParsedToken issueAccessToken(String username, String role, String sessionId, Instant sessionExpiresAt) {
+        Date now = new Date(System.currentTimeMillis() / 1000 * 1000);
         Date expiry = new Date(now.getTime() + jwtProperties.getExpirationMs());
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .setSubject(username)
                 .claim("role", role)
-                .claim("type", "access")
+                .claim("type", ParsedToken.ACCESS_TYPE);
+        if (sessionId != null && sessionExpiresAt != null) {
+            builder.claim("sid", sessionId).claim("sexp", sessionExpiresAt.getEpochSecond());
+        }
+        String token = builder
                 .setIssuedAt(now)
                 .setExpiration(expiry)
-                .signWith(currentSigningKey(), SignatureAlgorithm.HS256)
+                .setHeaderParam(JwsHeader.KEY_ID, keyRing.signingKeyId())
+                .signWith(keyRing.signingKey(), SignatureAlgorithm.HS256)
                 .compact();
+        boolean bound = sessionId != null && sessionExpiresAt != null;
+        return new ParsedToken(token, username, role, ParsedToken.ACCESS_TYPE, bound ? sessionId : null, null,
+                now.toInstant(), truncateToSeconds(expiry),
+                bound ? Instant.ofEpochSecond(sessionExpiresAt.getEpochSecond()) : null);
     }
 
-    public String generateRefreshToken(String username, String role){
-        return generateRefreshToken(username, role, UUID.randomUUID().toString(), UUID.randomUUID().toString());
-    }
-
-    public String generateRefreshToken(String username, String role, String sessionId, String familyId){
-        Date now = new Date();
+    /**
+     * Sign a new refresh token and return it together with its claims, so callers never parse what they just built.
+     */
+    public ParsedToken issueRefreshToken(String username, String role, String sessionId, String familyId) {
+        Date now = new Date(System.currentTimeMillis() / 1000 * 1000);
         Date expiry = new Date(now.getTime() + jwtProperties.getRefreshExpirationMs());
-        return Jwts.builder()
+        String token = Jwts.builder()
                 .setSubject(username)
                 .claim("role", role)
-                .claim("type","refresh")
+                .claim("type", ParsedToken.REFRESH_TYPE)
                 .claim("sid", sessionId)
                 .claim("fid", familyId)
                 .setIssuedAt(now)
                 .setExpiration(expiry)
-                .signWith(currentSigningKey(), SignatureAlgorithm.HS256)
+                .setHeaderParam(JwsHeader.KEY_ID, keyRing.signingKeyId())
+                .signWith(keyRing.signingKey(), SignatureAlgorithm.HS256)
                 .compact();
+        return new ParsedToken(token, username, role, ParsedToken.REFRESH_TYPE, sessionId, familyId,
+                now.toInstant(), truncateToSeconds(expiry));
+    }
+
+    /**
+     * Verify the signature and decode the claims exactly once. Empty when the token is invalid or expired.
+     */
+    public Optional<ParsedToken> parse(String token) {
+        return parseToken(token).map(claims -> ParsedToken.fromClaims(token, claims.getBody()));
     }
 
     public String getUsername(String token){
-        return parseToken(token).map(claims -> claims.getBody().getSubject()).orElse(null);
+        return parse(token).map(ParsedToken::getUsername).orElse(null);
     }
 
     public boolean validate(String token){
@@ -64,62 +117,46 @@ public class JwtUtil {
     }
 
     public String getTokenType(String token) {
-        return getStringClaim(token, "type");
+        return parse(token).map(ParsedToken::getType).orElse(null);
     }
 
     public String getSessionId(String token) {
-        return getStringClaim(token, "sid");
+        return parse(token).map(ParsedToken::getSessionId).orElse(null);
     }
 
     public String getFamilyId(String token) {
-        return getStringClaim(token, "fid");
+        return parse(token).map(ParsedToken::getFamilyId).orElse(null);
     }
 
     public Instant getExpiration(String token) {
-        return parseToken(token)
-                .map(claims -> claims.getBody().getExpiration().toInstant())
-                .orElse(null);
+        return parse(token).map(ParsedToken::getExpiration).orElse(null);
+    }
+
+    private Optional<Jws<Claims>> parseToken(String token) {
+        try {
+            return Optional.of(keyRing.kidParser().parseClaimsJws(token));
+        } catch (JwtKeyRing.MissingKeyIdException e) {
+            return parseLegacyToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
     }
 
-    private java.util.Optional<io.jsonwebtoken.Jws<io.jsonwebtoken.Claims>> parseToken(String token) {
-        for (SecretKey key : validationKeys()) {
+    // Tokens issued before kid stamping: try each configured key, current secret first.
+    private Optional<Jws<Claims>> parseLegacyToken(String token) {
+        for (JwtParser parser : keyRing.legacyParsers()) {
             try {
-                return java.util.Optional.of(
-                        Jwts.parserBuilder()
-                                .setSigningKey(key)
-                                .build()
-                                .parseClaimsJws(token)
-                );
-            } catch (SecurityException | io.jsonwebtoken.MalformedJwtException |
-                     io.jsonwebtoken.ExpiredJwtException | io.jsonwebtoken.UnsupportedJwtException |
-                     IllegalArgumentException ignored) {
+                return Optional.of(parser.parseClaimsJws(token));
+            } catch (SecurityException | MalformedJwtException | ExpiredJwtException |
+                     UnsupportedJwtException | IllegalArgumentException ignored) {
                 // try next secret
             }
         }
-        return java.util.Optional.empty();
-    }
-
-    private String getStringClaim(String token, String claimKey) {
-        return parseToken(token)
-                .map(claims -> claims.getBody().get(claimKey, String.class))
-                .orElse(null);
+        return Optional.empty();
     }
 
-    private SecretKey currentSigningKey() {
-        return Keys.hmacShaKeyFor(jwtProperties.getSecret().getBytes(StandardCharsets.UTF_8));
-    }
-
-    private List<SecretKey> validationKeys() {
-        String current = jwtProperties.getSecret();
-        String previous = jwtProperties.getPreviousSecrets() == null ? "" : jwtProperties.getPreviousSecrets();
-        List<SecretKey> keys = Arrays.stream((current + "," + previous).split(","))
-                .map(String::trim)
-                .filter(s -> !s.isBlank())
-                .map(s -> Keys.hmacShaKeyFor(s.getBytes(StandardCharsets.UTF_8)))
-                .collect(Collectors.toList());
-        if (keys.isEmpty()) {
-            throw new IllegalStateException("No JWT signing keys configured");
-        }
-        return keys;
+    // JWT dates are serialized with second precision; mirror that so issued and parsed views agree.
+    private Instant truncateToSeconds(Date date) {
+        return Instant.ofEpochSecond(date.getTime() / 1000);
     }
 }
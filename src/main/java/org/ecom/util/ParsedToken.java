@@ -0,0 +1,79 @@
+package org.ecom.util;
+
+import io.jsonwebtoken.Claims;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Verified, decoded view of a JWT. Built once per token so callers read claims
+ * without re-running signature verification.
+ */
+@Getter
+public final class ParsedToken {
+    public static final String ACCESS_TYPE = "access";
+    public static final String REFRESH_TYPE = "refresh";
+
+    private final String token;
+    private final String username;
+    private final String role;
+    private final String type;
+    private final String sessionId;
+    private final String familyId;
+    private final Instant issuedAt;
+    private final Instant expiration;
+    /**
+     * Access tokens only: expiry of the refresh session ({@code sid}) they were issued with, which is
+     * that session's partition key.
+     */
+    private final Instant sessionExpiresAt;
+
+    public ParsedToken(String token, String username, String role, String type,
+                       String sessionId, String familyId, Instant issuedAt, Instant expiration) {
+        this(token, username, role, type, sessionId, familyId, issuedAt, expiration, null);
+    }
+
+    public ParsedToken(String token, String username, String role, String type,
+                       String sessionId, String familyId, Instant issuedAt, Instant expiration,
+                       Instant sessionExpiresAt) {
+        this.token = token;
+        this.username = username;
+        this.role = role;
+        this.type = type;
+        this.sessionId = sessionId;
+        this.familyId = familyId;
+        this.issuedAt = issuedAt;
+        this.expiration = expiration;
+        this.sessionExpiresAt = sessionExpiresAt;
+    }
+
+    static ParsedToken fromClaims(String token, Claims claims) {
+        Long sessionExp = claims.get("sexp", Long.class);
+        return new ParsedToken(
+                token,
+                claims.getSubject(),
+                claims.get("role", String.class),
+                claims.get("type", String.class),
+                claims.get("sid", String.class),
+                claims.get("fid", String.class),
+                claims.getIssuedAt() == null ? null : claims.getIssuedAt().toInstant(),
+                claims.getExpiration() == null ? null : claims.getExpiration().toInstant(),
+                sessionExp == null ? null : Instant.ofEpochSecond(sessionExp)
+        );
+    }
+
+    /**
+     * Copy without the raw compact token, for holders that must not retain bearer credentials.
+     */
+    public ParsedToken withoutToken() {
+        return new ParsedToken(null, username, role, type, sessionId, familyId, issuedAt, expiration, sessionExpiresAt);
+    }
+
+    public boolean isAccessToken() {
+        return ACCESS_TYPE.equals(type);
+    }
+
+    public boolean isRefreshToken() {
+        return REFRESH_TYPE.equals(type);
+    }
+}
@@ -0,0 +1,103 @@
+package org.ecom.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.ecom.config.JwtProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Size-bounded cache of verified bearer tokens, keyed by a SHA-256 digest of the token.
+ * Entries expire at the token's {@code exp} and are ignored once the key ring has been reloaded,
+ * so repeat requests with the same token skip signature verification and claim decoding.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private final JwtUtil jwtUtil;
+    private final JwtKeyRing keyRing;
+    private final Cache<String, Entry> cache;
+
+    public VerifiedTokenCache(JwtUtil jwtUtil, JwtKeyRing keyRing, JwtProperties jwtProperties, MeterRegistry meterRegistry) {
+        this.jwtUtil = jwtUtil;
+        this.keyRing = keyRing;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(jwtProperties.getVerifiedCacheMaxSize())
+                .expireAfter(new ExpireAtTokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.verified");
+    }
+
+    /**
+     * Claims of a valid token, from cache when possible. The returned token never carries the raw
+     * compact string (see {@link ParsedToken#withoutToken()}).
+     */
+    public Optional<ParsedToken> get(String token) {
+        String key = digest(token);
+        long generation = keyRing.generation();
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation() == generation && entry.claims().getExpiration().isAfter(Instant.now())) {
+            return Optional.of(entry.claims());
+        }
+
+        Optional<ParsedToken> parsed = jwtUtil.parse(token).map(ParsedToken::withoutToken);
+        parsed.filter(claims -> claims.getExpiration() != null)
+                .ifPresentOrElse(claims -> cache.put(key, new Entry(claims, generation)),
+                        () -> cache.invalidate(key));
+        return parsed;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    private String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private record Entry(ParsedToken claims, long generation) {
+    }
+
+    private static class ExpireAtTokenExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            long nanos = Duration.between(Instant.now(), entry.claims().getExpiration()).toNanos();
+            return Math.max(nanos, 0);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
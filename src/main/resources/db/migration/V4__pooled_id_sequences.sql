@@ -0,0 +1,4 @@
+-- Hibernate allocates ids in blocks of 50 (pooled optimizer) so inserts can be JDBC-batched.
+-- The BIGSERIAL defaults stay in place for manual inserts; they just skip ahead 50 per row.
+ALTER SEQUENCE users_id_seq INCREMENT BY 50;
+ALTER SEQUENCE user_sessions_id_seq INCREMENT BY 50;
@@ -0,0 +1,60 @@
+-- Range-partition user_sessions by expires_at, one partition per day (user_sessions_pYYYYMMDD).
+-- Old days are dropped whole by SessionPartitionMaintainer; the default partition catches rows
+-- outside the pre-created range and is cleaned by the chunked SessionPurger.
+--
+-- Partitioned tables need the partition key in every unique constraint, so the primary key becomes
+-- (id, expires_at) and session_id is unique per (session_id, expires_at). Ids still come from the
+-- same sequence, and session ids are random UUIDs, so neither changes in practice.
+
+-- Keep the id sequence when the old table is dropped.
+ALTER SEQUENCE user_sessions_id_seq OWNED BY NONE;
+ALTER TABLE user_sessions RENAME TO user_sessions_legacy;
+
+CREATE TABLE user_sessions (
+    id BIGINT NOT NULL DEFAULT nextval('user_sessions_id_seq'),
+    session_id VARCHAR(64) NOT NULL,
+    family_id VARCHAR(64) NOT NULL,
+    user_id BIGINT NOT NULL,
+    refresh_token_hash VARCHAR(128) NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    revoked BOOLEAN NOT NULL DEFAULT FALSE,
+    revoked_at TIMESTAMP,
+    replaced_by_session_id VARCHAR(64),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_used_at TIMESTAMP,
+    ip_address VARCHAR(64),
+    user_agent VARCHAR(255)
+) PARTITION BY RANGE (expires_at);
+
+CREATE TABLE user_sessions_default PARTITION OF user_sessions DEFAULT;
+
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN SELECT generate_series(CURRENT_DATE - 8, CURRENT_DATE + 7, INTERVAL '1 day')::DATE LOOP
+        EXECUTE format(
+            'CREATE TABLE %I PARTITION OF user_sessions FOR VALUES FROM (%L) TO (%L)',
+            'user_sessions_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+-- Every row is carried over. Rows outside the pre-created days land in user_sessions_default: older
+-- ones are removed by SessionPurger, and SessionPartitionMaintainer moves later ones into their day's
+-- partition when it creates it.
+INSERT INTO user_sessions (id, session_id, family_id, user_id, refresh_token_hash, expires_at, revoked,
+                           revoked_at, replaced_by_session_id, created_at, last_used_at, ip_address, user_agent)
+SELECT id, session_id, family_id, user_id, refresh_token_hash, expires_at, revoked,
+       revoked_at, replaced_by_session_id, created_at, last_used_at, ip_address, user_agent
+FROM user_sessions_legacy;
+
+DROP TABLE user_sessions_legacy;
+
+ALTER TABLE user_sessions ADD CONSTRAINT user_sessions_pkey PRIMARY KEY (id, expires_at);
+ALTER TABLE user_sessions ADD CONSTRAINT uk_user_sessions_session_id UNIQUE (session_id, expires_at);
+ALTER TABLE user_sessions ADD CONSTRAINT fk_user_sessions_user FOREIGN KEY (user_id) REFERENCES users(id);
+CREATE INDEX idx_user_sessions_user_id ON user_sessions(user_id);
+CREATE INDEX idx_user_sessions_family_id ON user_sessions(family_id);
+CREATE INDEX idx_user_sessions_expires_at ON user_sessions(expires_at);
+
+ALTER SEQUENCE user_sessions_id_seq OWNED BY user_sessions.id;
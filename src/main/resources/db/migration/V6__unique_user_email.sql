@@ -0,0 +1,23 @@
+-- Email uniqueness was only checked by the application. The in-memory existence filter can miss an
+-- email another node registered moments ago, so the database has to be the final check, as it
+-- already is for usernames.
+--
+-- Existing duplicates would make CREATE UNIQUE INDEX fail with a bare constraint error, so check first
+-- and stop with the remediation steps instead. Postgres rolls the whole migration back, so it can be
+-- rerun once the duplicates are resolved.
+DO $$
+DECLARE
+    duplicates BIGINT;
+BEGIN
+    SELECT count(*) INTO duplicates
+    FROM (SELECT email FROM users WHERE email IS NOT NULL GROUP BY email HAVING count(*) > 1) shared;
+    IF duplicates > 0 THEN
+        RAISE EXCEPTION 'V6: % email address(es) belong to more than one user', duplicates
+            USING HINT = 'List them with SELECT email, array_agg(id ORDER BY id) FROM users '
+                || 'WHERE email IS NOT NULL GROUP BY email HAVING count(*) > 1; then change or clear the email '
+                || 'of all but one account per address and restart the application.';
+    END IF;
+END $$;
+
+CREATE UNIQUE INDEX uk_users_email ON users(email);
+DROP INDEX IF EXISTS idx_users_email;
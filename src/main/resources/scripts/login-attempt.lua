@@ -0,0 +1,27 @@
+-- Records one login attempt atomically.
+-- KEYS[1] = failure counter, KEYS[2] = lock flag
+-- ARGV[1] = '1' if the password was correct, ARGV[2] = max failed attempts,
+-- ARGV[3] = failure window (seconds), ARGV[4] = lock duration (seconds)
+-- Returns minus the remaining lock time (ms) when the pair is locked, 0 on success,
+-- otherwise the failure count.
+local lockTtl = redis.call('PTTL', KEYS[2])
+if lockTtl ~= -2 then
+    if lockTtl < 1 then
+        lockTtl = 1
+    end
+    return -lockTtl
+end
+
+if ARGV[1] == '1' then
+    redis.call('DEL', KEYS[1])
+    return 0
+end
+
+local attempts = redis.call('INCR', KEYS[1])
+if redis.call('TTL', KEYS[1]) < 0 then
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+end
+if attempts >= tonumber(ARGV[2]) then
+    redis.call('SET', KEYS[2], '1', 'EX', ARGV[4])
+end
+return attempts
@@ -0,0 +1,14 @@
+-- Stores a new live refresh session and queues its creation for Postgres.
+-- KEYS[1] = session hash, KEYS[2] = session event stream, KEYS[3] = the user's family set
+-- ARGV[1] = session id, ARGV[2] = family id, ARGV[3] = username, ARGV[4] = token hash,
+-- ARGV[5] = expiry (epoch ms), ARGV[6] = now (epoch ms), ARGV[7] = client ip, ARGV[8] = user agent,
+-- ARGV[9] = user id, ARGV[10] = family set ttl (ms)
+-- The stream is not capped here: SessionEventWriter trims it only below what its group has acknowledged.
+redis.call('HSET', KEYS[1], 'user', ARGV[3], 'fid', ARGV[2], 'hash', ARGV[4], 'uid', ARGV[9])
+redis.call('PEXPIREAT', KEYS[1], ARGV[5])
+redis.call('SADD', KEYS[3], ARGV[2])
+redis.call('PEXPIRE', KEYS[3], ARGV[10])
+redis.call('XADD', KEYS[2], '*',
+        'type', 'CREATED', 'sid', ARGV[1], 'fid', ARGV[2], 'user', ARGV[3], 'uid', ARGV[9], 'hash', ARGV[4],
+        'exp', ARGV[5], 'at', ARGV[6], 'ip', ARGV[7], 'ua', ARGV[8])
+return 1
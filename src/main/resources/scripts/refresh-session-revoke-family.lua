@@ -0,0 +1,9 @@
+-- Revokes a refresh session family and queues the revocation for Postgres.
+-- KEYS[1] = family revoked flag, KEYS[2] = session event stream
+-- ARGV[1] = family id, ARGV[2] = family flag ttl (ms), ARGV[3] = now (epoch ms)
+-- Returns 1 if the family was not revoked before, 0 otherwise.
+if not redis.call('SET', KEYS[1], '1', 'PX', ARGV[2], 'NX') then
+    return 0
+end
+redis.call('XADD', KEYS[2], '*', 'type', 'FAMILY_REVOKED', 'fid', ARGV[1], 'at', ARGV[3])
+return 1
@@ -0,0 +1,15 @@
+-- Revokes every refresh session family of a user and queues the revocations for Postgres.
+-- KEYS[1] = the user's family set, KEYS[2] = session event stream
+-- ARGV[1] = family revoked flag key prefix, ARGV[2] = family flag ttl (ms), ARGV[3] = now (epoch ms)
+-- The family flag keys are built here from ARGV[1]; like the rest of the session keys they live on the
+-- single Redis the store uses.
+-- Returns the number of families revoked by this call.
+local revoked = 0
+for _, fid in ipairs(redis.call('SMEMBERS', KEYS[1])) do
+    if redis.call('SET', ARGV[1] .. fid, '1', 'PX', ARGV[2], 'NX') then
+        redis.call('XADD', KEYS[2], '*', 'type', 'FAMILY_REVOKED', 'fid', fid, 'at', ARGV[3])
+        revoked = revoked + 1
+    end
+end
+redis.call('DEL', KEYS[1])
+return revoked
@@ -0,0 +1,12 @@
+-- Marks a live refresh session as logged out and queues the revocation for Postgres.
+-- KEYS[1] = session hash, KEYS[2] = session event stream
+-- ARGV[1] = session id, ARGV[2] = now (epoch ms), ARGV[3] = session expiry (epoch ms)
+-- Returns 1 if the session was live, 0 otherwise.
+if redis.call('HEXISTS', KEYS[1], 'user') == 0 then
+    return 0
+end
+if redis.call('HSETNX', KEYS[1], 'next', '') == 0 then
+    return 0
+end
+redis.call('XADD', KEYS[2], '*', 'type', 'REVOKED', 'sid', ARGV[1], 'exp', ARGV[3], 'at', ARGV[2])
+return 1
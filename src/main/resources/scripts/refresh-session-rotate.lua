@@ -0,0 +1,49 @@
+-- Validates a presented refresh session and rotates it to a new one in one step.
+-- A rotated or logged-out session keeps its hash with a 'next' field until it expires, so a second
+-- use of the same token is seen as reuse and revokes the whole family.
+-- KEYS[1] = presented session hash, KEYS[2] = new session hash, KEYS[3] = family revoked flag,
+-- KEYS[4] = session event stream, KEYS[5] = the user's family set
+-- ARGV[1] = presented session id, ARGV[2] = presented token hash, ARGV[3] = username, ARGV[4] = family id,
+-- ARGV[5] = new session id, ARGV[6] = new token hash, ARGV[7] = new expiry (epoch ms),
+-- ARGV[8] = family flag ttl (ms), ARGV[9] = now (epoch ms), ARGV[10] = client ip, ARGV[11] = user agent,
+-- ARGV[12] = presented session expiry (epoch ms)
+-- The user id is carried over from the presented session (empty for sessions stored before it was kept).
+-- Returns OK, MISSING, REVOKED, MISMATCH or REUSED.
+local function revoke_family()
+    if redis.call('SET', KEYS[3], '1', 'PX', ARGV[8], 'NX') then
+        redis.call('XADD', KEYS[4], '*',
+                'type', 'FAMILY_REVOKED', 'fid', ARGV[4], 'at', ARGV[9])
+    end
+end
+
+if redis.call('EXISTS', KEYS[3]) == 1 then
+    return 'REVOKED'
+end
+
+local session = redis.call('HMGET', KEYS[1], 'user', 'fid', 'hash', 'next', 'uid')
+if not session[1] then
+    return 'MISSING'
+end
+if session[4] then
+    revoke_family()
+    return 'REVOKED'
+end
+if session[1] ~= ARGV[3] or session[2] ~= ARGV[4] then
+    revoke_family()
+    return 'MISMATCH'
+end
+if session[3] ~= ARGV[2] then
+    revoke_family()
+    return 'REUSED'
+end
+
+redis.call('HSET', KEYS[1], 'next', ARGV[5])
+local uid = session[5] or ''
+redis.call('HSET', KEYS[2], 'user', ARGV[3], 'fid', ARGV[4], 'hash', ARGV[6], 'uid', uid)
+redis.call('PEXPIREAT', KEYS[2], ARGV[7])
+-- The family lives as long as its newest session, so keep the user's family set as long.
+redis.call('PEXPIRE', KEYS[5], ARGV[8])
+redis.call('XADD', KEYS[4], '*',
+        'type', 'ROTATED', 'sid', ARGV[5], 'old', ARGV[1], 'oldexp', ARGV[12], 'fid', ARGV[4], 'user', ARGV[3], 'uid', uid, 'hash', ARGV[6],
+        'exp', ARGV[7], 'at', ARGV[9], 'ip', ARGV[10], 'ua', ARGV[11])
+return 'OK'
@@ -0,0 +1,62 @@
+package org.ecom.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BCryptCostCalibratorTest {
+
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+
+    @Test
+    void storedCostIsUsedWithoutCalibrating() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get(BCryptCostCalibrator.COST_KEY)).thenReturn("12");
+
+        assertEquals(12, BCryptCostCalibrator.deploymentCost(redisTemplate, 100, 10, 14));
+        verify(values, never()).setIfAbsent(anyString(), anyString());
+    }
+
+    @Test
+    void storedCostIsClampedToConfiguredRange() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get(BCryptCostCalibrator.COST_KEY)).thenReturn("20");
+
+        assertEquals(14, BCryptCostCalibrator.deploymentCost(redisTemplate, 100, 10, 14));
+    }
+
+    @Test
+    void firstNodeStoresItsCalibration() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(BCryptCostCalibrator.COST_KEY, "4")).thenReturn(true);
+
+        assertEquals(4, BCryptCostCalibrator.deploymentCost(redisTemplate, 0, 4, 4));
+    }
+
+    @Test
+    void losingTheRaceUsesTheWinnersCost() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get(BCryptCostCalibrator.COST_KEY)).thenReturn(null, "5");
+        when(values.setIfAbsent(BCryptCostCalibrator.COST_KEY, "4")).thenReturn(false);
+
+        assertEquals(5, BCryptCostCalibrator.deploymentCost(redisTemplate, 0, 4, 5));
+    }
+
+    @Test
+    void redisFailureFallsBackToMinimum() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get(BCryptCostCalibrator.COST_KEY)).thenThrow(new RedisConnectionFailureException("down"));
+
+        assertEquals(10, BCryptCostCalibrator.deploymentCost(redisTemplate, 100, 10, 14));
+    }
+}
@@ -0,0 +1,74 @@
+package org.ecom.config;
+
+import org.ecom.exception.BusinessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTest {
+
+    // One hashing thread, no queue: a second concurrent hash is rejected.
+    private final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy());
+    private final ExecutorService queued = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(4), new ThreadPoolExecutor.AbortPolicy());
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        queued.shutdownNow();
+    }
+
+    @Test
+    void delegatesOnHashingExecutor() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), queued, 5000);
+
+        String hash = encoder.encode("Password1!");
+
+        assertTrue(encoder.matches("Password1!", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertTrue(new BoundedPasswordEncoder(new BCryptPasswordEncoder(5), queued, 5000).upgradeEncoding(hash));
+    }
+
+    @Test
+    void saturatedExecutorFailsFastWithServiceUnavailable() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(rawPassword);
+            }
+        };
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blocking, executor, 5000);
+        Thread holder = new Thread(() -> encoder.encode("first"));
+        holder.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> encoder.matches("second", "$2a$04$x"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+        release.countDown();
+        holder.join();
+    }
+}
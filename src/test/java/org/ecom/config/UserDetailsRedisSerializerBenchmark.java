@@ -0,0 +1,121 @@
+package org.ecom.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the compact auth cache format with the typed JSON it replaced. Not part of the regular
+ * test run (surefire only picks up {@code *Test} classes); run it explicitly with
+ * {@code mvn -B test -Dtest=UserDetailsRedisSerializerBenchmark -Dsurefire.failIfNoSpecifiedTests=false}.
+ * The Redis memory measurement needs Docker and is skipped without it.
+ */
+class UserDetailsRedisSerializerBenchmark {
+
+    private static final String BCRYPT_HASH = "$2a$10$abcdefghijklmnopqrstuuN8dYwQqJz1FvF4Oq3k6p0m7YH3rL5mG";
+    private static final int USERS = 1_000_000;
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    private final UserDetailsRedisSerializer compact = new UserDetailsRedisSerializer();
+    private final GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+
+    @Test
+    void payloadSizeAndTiming() {
+        UserDetails user = user(123_456);
+        byte[] compactBytes = compact.serialize(user);
+
+        System.out.printf("value size: compact=%d bytes, json=%d bytes%n",
+                compactBytes.length, json.serialize(user).length);
+        System.out.printf("serialize: compact=%.0f ns/op, json=%.0f ns/op%n",
+                nanosPerOp(() -> compact.serialize(user).length),
+                nanosPerOp(() -> json.serialize(user).length));
+        System.out.printf("deserialize: compact=%.0f ns/op (json cannot be read back into User)%n",
+                nanosPerOp(() -> compact.deserialize(compactBytes).getAuthorities().size()));
+    }
+
+    @Test
+    void redisMemoryForOneMillionUsers() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        try (GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+                .withExposedPorts(6379)) {
+            redis.start();
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+            factory.afterPropertiesSet();
+            try (RedisConnection connection = factory.getConnection()) {
+                long compactBytes = usedMemoryFor(connection, compact);
+                long jsonBytes = usedMemoryFor(connection, json);
+                System.out.printf("redis used_memory for %d users: compact=%.1f MB (%d B/key), json=%.1f MB (%d B/key)%n",
+                        USERS, compactBytes / 1e6, compactBytes / USERS, jsonBytes / 1e6, jsonBytes / USERS);
+            } finally {
+                factory.destroy();
+            }
+        }
+    }
+
+    private long usedMemoryFor(RedisConnection connection, RedisSerializer<? super UserDetails> serializer) {
+        connection.serverCommands().flushAll();
+        long before = usedMemory(connection);
+        Expiration ttl = Expiration.from(30, TimeUnit.MINUTES);
+        for (int start = 0; start < USERS; start += 10_000) {
+            connection.openPipeline();
+            for (int i = start; i < start + 10_000; i++) {
+                byte[] key = ("user:" + username(i)).getBytes(StandardCharsets.UTF_8);
+                connection.stringCommands().set(key, serializer.serialize(user(i)), ttl, SetOption.upsert());
+            }
+            connection.closePipeline();
+        }
+        return usedMemory(connection) - before;
+    }
+
+    private static long usedMemory(RedisConnection connection) {
+        return Long.parseLong(connection.serverCommands().info("memory").getProperty("used_memory"));
+    }
+
+    private static double nanosPerOp(IntSupplier op) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += op.getAsInt();
+        }
+        double[] rounds = new double[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += op.getAsInt();
+            }
+            rounds[r] = (System.nanoTime() - start) / (double) ITERATIONS;
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+
+    private static UserDetails user(int i) {
+        return User.withUsername(username(i)).password(BCRYPT_HASH).roles("USER").build();
+    }
+
+    private static String username(int i) {
+        return String.format("user%07d", i);
+    }
+}
@@ -0,0 +1,78 @@
+package org.ecom.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserDetailsRedisSerializerTest {
+
+    private static final String BCRYPT_HASH = "$2a$10$abcdefghijklmnopqrstuuN8dYwQqJz1FvF4Oq3k6p0m7YH3rL5mG";
+
+    private final UserDetailsRedisSerializer serializer = new UserDetailsRedisSerializer();
+
+    @Test
+    void roundTripKeepsAuthoritiesAndFlags() {
+        UserDetails user = User.withUsername("alice")
+                .password(BCRYPT_HASH)
+                .roles("USER", "ADMIN")
+                .accountLocked(true)
+                .build();
+
+        UserDetails restored = serializer.deserialize(serializer.serialize(user));
+
+        assertEquals(user.getUsername(), restored.getUsername());
+        assertEquals("", restored.getPassword());
+        assertEquals(user.getAuthorities(), restored.getAuthorities());
+        assertFalse(restored.isAccountNonLocked());
+        assertTrue(restored.isEnabled());
+    }
+
+    @Test
+    void neverWritesThePasswordHash() {
+        UserDetails user = User.withUsername("alice").password(BCRYPT_HASH).roles("USER").build();
+
+        String payload = new String(serializer.serialize(user), StandardCharsets.ISO_8859_1);
+
+        assertFalse(payload.contains(BCRYPT_HASH));
+    }
+
+    @Test
+    void authorityCountIsNotLimitedToOneByte() {
+        String[] authorities = IntStream.range(0, 300).mapToObj(i -> "PERM_" + i).toArray(String[]::new);
+        UserDetails user = User.withUsername("alice").password("x").authorities(authorities).build();
+
+        UserDetails restored = serializer.deserialize(serializer.serialize(user));
+
+        assertEquals(300, restored.getAuthorities().size());
+        assertEquals(user.getAuthorities(), restored.getAuthorities());
+    }
+
+    @Test
+    void isMuchSmallerThanTypedJson() {
+        UserDetails user = User.withUsername("alice").password(BCRYPT_HASH).roles("USER").build();
+
+        int compact = serializer.serialize(user).length;
+        int json = new GenericJackson2JsonRedisSerializer().serialize(user).length;
+
+        assertTrue(compact * 3 < json, "compact=" + compact + " json=" + json);
+    }
+
+    @Test
+    void legacyJsonPayloadIsTreatedAsMiss() {
+        UserDetails user = User.withUsername("alice").password("x").roles("USER").build();
+        byte[] json = new GenericJackson2JsonRedisSerializer().serialize(user);
+
+        assertNull(serializer.deserialize(json));
+        assertNull(serializer.deserialize(new byte[0]));
+        assertNull(serializer.deserialize(new byte[]{1, 15, 0, 1, 'a', 1, 0, 1, 'x'}));
+    }
+}
@@ -2,7 +2,11 @@ package org.ecom.integration;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.ecom.repository.UserRepository;
 import org.ecom.repository.UserSessionRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,9 +21,13 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -49,6 +57,9 @@ class AuthFlowIntegrationTest {
         registry.add("app.jwt.previous-secrets", () -> "");
         registry.add("spring.flyway.enabled", () -> true);
         registry.add("spring.jpa.hibernate.ddl-auto", () -> "validate");
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> true);
+        registry.add("spring.jpa.properties.hibernate.session_factory.statement_inspector",
+                RecordingStatementInspector.class::getName);
     }
 
     @Autowired
@@ -60,6 +71,12 @@ class AuthFlowIntegrationTest {
     @Autowired
     private UserSessionRepository userSessionRepository;
 
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     void cleanSessions() {
         userSessionRepository.deleteAll();
@@ -138,4 +155,72 @@ class AuthFlowIntegrationTest {
                         .content(logoutRequest))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    void refreshRunsFixedNumberOfStatements() throws Exception {
+        String username = "stmt_" + System.currentTimeMillis();
+        String password = "Password1!";
+        mockMvc.perform(post("/user/create")
+                        .contentType(APPLICATION_JSON)
+                        .content("""
+                                {"username":"%s","email":"%s@example.com","password":"%s","confirmPassword":"%s"}
+                                """.formatted(username, username, password, password)))
+                .andExpect(status().isOk());
+        String loginResponse = mockMvc.perform(post("/auth/login")
+                        .contentType(APPLICATION_JSON)
+                        .content("""
+                                {"username":"%s","password":"%s"}
+                                """.formatted(username, password)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String refreshToken = objectMapper.readTree(loginResponse).path("data").path("refreshToken").asText();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(post("/auth/refresh_token")
+                        .contentType(APPLICATION_JSON)
+                        .content("""
+                                {"refreshToken":"%s"}
+                                """.formatted(refreshToken)))
+                .andExpect(status().isOk());
+
+        // session + user + role in one SELECT, revoke UPDATE, new session INSERT
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void fieldsSelectsOnlyRequestedColumnsAndOmitsTheRestFromJson() throws Exception {
+        String username = "view_" + System.currentTimeMillis();
+        String password = "Password1!";
+        mockMvc.perform(post("/user/create")
+                        .contentType(APPLICATION_JSON)
+                        .content("""
+                                {"username":"%s","email":"%s@example.com","password":"%s","confirmPassword":"%s"}
+                                """.formatted(username, username, password, password)))
+                .andExpect(status().isOk());
+        long id = userRepository.findByUsername(username).orElseThrow().getId();
+
+        RecordingStatementInspector.STATEMENTS.clear();
+        String response = mockMvc.perform(get("/user/{id}", id).param("fields", "username")
+                        .with(user("admin").roles("ADMIN")))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertEquals(1, RecordingStatementInspector.STATEMENTS.size());
+        String sql = RecordingStatementInspector.STATEMENTS.get(0).toLowerCase();
+        assertFalse(sql.contains("role"), sql);
+        assertFalse(sql.contains("password"), sql);
+        JsonNode data = objectMapper.readTree(response).path("data");
+        assertEquals(username, data.path("username").asText());
+        assertFalse(data.has("role"));
+
+        mockMvc.perform(get("/user/{id}", id).param("fields", ",")
+                        .with(user("admin").roles("ADMIN")))
+                .andExpect(status().isBadRequest());
+    }
 }
@@ -0,0 +1,61 @@
+package org.ecom.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.ecom.dto.UserViewDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserViewRepositoryImplTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void selectsOnlyRequestedColumnsAndJoinsRoleWhenNeeded() {
+        assertEquals("select u.id as id, u.username as username, r.type as role from User u join u.role r",
+                UserViewRepositoryImpl.select(EnumSet.allOf(UserViewDto.Field.class)));
+        assertEquals("select u.id as id, u.username as username from User u",
+                UserViewRepositoryImpl.select(EnumSet.of(UserViewDto.Field.USERNAME)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void usernameOnlyViewReadsOneColumnAndOmitsRoleFromJson() throws Exception {
+        EntityManager entityManager = mock(EntityManager.class);
+        TypedQuery<Tuple> query = mock(TypedQuery.class);
+        Tuple tuple = mock(Tuple.class);
+        when(entityManager.createQuery(anyString(), eq(Tuple.class))).thenReturn(query);
+        when(query.setParameter(anyString(), anyLong())).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.of(tuple));
+        when(tuple.get("username", String.class)).thenReturn("alice");
+        UserViewRepositoryImpl repository = new UserViewRepositoryImpl();
+        ReflectionTestUtils.setField(repository, "entityManager", entityManager);
+
+        UserViewDto view = repository.findViewById(7, EnumSet.of(UserViewDto.Field.USERNAME)).orElseThrow();
+
+        verify(entityManager).createQuery("select u.id as id, u.username as username from User u where u.id = :id",
+                Tuple.class);
+        verify(tuple, never()).get(eq("role"), eq(String.class));
+        assertEquals("{\"username\":\"alice\"}", objectMapper.writeValueAsString(view));
+    }
+
+    @Test
+    void fullViewSerializesEveryProperty() throws Exception {
+        assertEquals("{\"username\":\"alice\",\"role\":\"USER\"}",
+                objectMapper.writeValueAsString(new UserViewDto("alice", "USER")));
+    }
+}
@@ -9,15 +9,16 @@ import org.ecom.model.User;
 import org.ecom.model.UserSession;
 import org.ecom.repository.UserRepository;
 import org.ecom.util.JwtUtil;
+import org.ecom.util.ParsedToken;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
 import java.util.Optional;
@@ -35,13 +36,19 @@ class AuthServiceTest {
     @Mock
     private JwtUtil jwtUtil;
     @Mock
-    private AuthenticationManager authenticationManager;
+    private PasswordEncoder passwordEncoder;
     @Mock
     private RedisAuthService redisAuthService;
     @Mock
     private GoogleOAuthService googleOAuthService;
     @Mock
     private UserSessionService userSessionService;
+    @Mock
+    private RefreshSessionStore refreshSessionStore;
+    @Mock
+    private UserDetailsService userDetailsService;
+    @Mock
+    private RoleRegistry roleRegistry;
 
     @InjectMocks
     private AuthService authService;
@@ -56,15 +63,18 @@ class AuthServiceTest {
         role.setType("USER");
         User user = new User();
         user.setUsername("alice");
+        user.setPassword("stored-hash");
         user.setRole(role);
 
-        when(redisAuthService.isLoginLocked("alice", "127.0.0.1")).thenReturn(false);
-        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
-        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
-                .thenReturn(mock(Authentication.class));
-        when(jwtUtil.generateToken("alice", "USER")).thenReturn("access-token");
-        when(jwtUtil.generateRefreshToken(eq("alice"), eq("USER"), anyString(), anyString())).thenReturn("refresh-token");
-        when(jwtUtil.getExpiration("refresh-token")).thenReturn(Instant.now().plusSeconds(3600));
+        when(roleRegistry.typeOf(role)).thenReturn("USER");
+        when(redisAuthService.allowLoginAttempt("127.0.0.1")).thenReturn(true);
+        when(userRepository.findWithRoleByUsername("alice")).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches("Password1!", "stored-hash")).thenReturn(true);
+        when(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", true)).thenReturn(true);
+        when(jwtUtil.generateToken(eq("alice"), eq("USER"), any(ParsedToken.class))).thenReturn("access-token");
+        when(jwtUtil.issueRefreshToken(eq("alice"), eq("USER"), anyString(), anyString()))
+                .thenAnswer(inv -> new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                        inv.getArgument(2), inv.getArgument(3), Instant.now(), Instant.now().plusSeconds(3600)));
         when(userSessionService.createSession(any(), anyString(), anyString(), anyString(), any(), anyString(), anyString()))
                 .thenReturn(new UserSession());
 
@@ -72,9 +82,41 @@ class AuthServiceTest {
 
         assertEquals("access-token", response.getToken());
         assertEquals("refresh-token", response.getRefreshToken());
-        verify(redisAuthService).clearFailedLogin("alice", "127.0.0.1");
-        verify(redisAuthService, never()).recordFailedLogin(any(), any());
+        verify(redisAuthService).registerLoginAttempt("alice", "127.0.0.1", true);
+        verify(redisAuthService, never()).registerLoginAttempt(any(), any(), eq(false));
         verify(userSessionService).createSession(eq(user), anyString(), anyString(), eq("refresh-token"), any(), eq("127.0.0.1"), eq("JUnit"));
+        verify(redisAuthService).apply(argThat(mutation -> mutation.getCachedRefreshTokens().containsKey("refresh-token")
+                && mutation.getEvictedUsers().isEmpty()));
+        verify(userRepository, never()).findByUsername(any());
+        verify(passwordEncoder, never()).encode(any());
+    }
+
+    @Test
+    void loginRehashesPasswordStoredWithOldCost() {
+        LoginRequestDto request = new LoginRequestDto();
+        request.setUsername("alice");
+        request.setPassword("Password1!");
+        Role role = new Role();
+        role.setType("USER");
+        User user = new User();
+        user.setUsername("alice");
+        user.setPassword("old-cost-hash");
+        user.setRole(role);
+        when(roleRegistry.typeOf(role)).thenReturn("USER");
+        when(redisAuthService.allowLoginAttempt("127.0.0.1")).thenReturn(true);
+        when(userRepository.findWithRoleByUsername("alice")).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches("Password1!", "old-cost-hash")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("old-cost-hash")).thenReturn(true);
+        when(passwordEncoder.encode("Password1!")).thenReturn("new-cost-hash");
+        when(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", true)).thenReturn(true);
+        when(jwtUtil.issueRefreshToken(eq("alice"), eq("USER"), anyString(), anyString()))
+                .thenAnswer(inv -> new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                        inv.getArgument(2), inv.getArgument(3), Instant.now(), Instant.now().plusSeconds(3600)));
+
+        authService.login(request, "127.0.0.1", "JUnit");
+
+        assertEquals("new-cost-hash", user.getPassword());
+        verify(redisAuthService).apply(argThat(mutation -> mutation.getEvictedUsers().contains("alice")));
     }
 
     @Test
@@ -82,13 +124,69 @@ class AuthServiceTest {
         LoginRequestDto request = new LoginRequestDto();
         request.setUsername("alice");
         request.setPassword("Password1!");
-        when(redisAuthService.isLoginLocked("alice", "127.0.0.1")).thenReturn(true);
+        User user = new User();
+        user.setUsername("alice");
+        user.setPassword("stored-hash");
+        when(redisAuthService.allowLoginAttempt("127.0.0.1")).thenReturn(true);
+        when(userRepository.findWithRoleByUsername("alice")).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches(anyString(), eq("stored-hash"))).thenReturn(false);
+        when(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", false)).thenReturn(false);
 
         BusinessException ex = assertThrows(BusinessException.class,
                 () -> authService.login(request, "127.0.0.1"));
 
         assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
-        verifyNoInteractions(userRepository);
+        verifyNoInteractions(userSessionService, jwtUtil);
+    }
+
+    @Test
+    void loginLockedLocallySkipsPasswordCheckAndRedis() {
+        LoginRequestDto request = new LoginRequestDto();
+        request.setUsername("alice");
+        request.setPassword("Password1!");
+        when(redisAuthService.allowLoginAttempt("127.0.0.1")).thenReturn(true);
+        when(redisAuthService.isLoginLockedLocally("alice", "127.0.0.1")).thenReturn(true);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> authService.login(request, "127.0.0.1"));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+        verifyNoInteractions(userRepository, passwordEncoder);
+        verify(redisAuthService, never()).registerLoginAttempt(any(), any(), anyBoolean());
+    }
+
+    @Test
+    void loginWithBadPasswordRecordsFailure() {
+        LoginRequestDto request = new LoginRequestDto();
+        request.setUsername("alice");
+        request.setPassword("wrong");
+        User user = new User();
+        user.setUsername("alice");
+        user.setPassword("stored-hash");
+        when(redisAuthService.allowLoginAttempt("127.0.0.1")).thenReturn(true);
+        when(userRepository.findWithRoleByUsername("alice")).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches(anyString(), eq("stored-hash"))).thenReturn(false);
+        when(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", false)).thenReturn(true);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> authService.login(request, "127.0.0.1"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        verifyNoInteractions(userSessionService);
+    }
+
+    @Test
+    void loginRateExceededSkipsPasswordCheck() {
+        LoginRequestDto request = new LoginRequestDto();
+        request.setUsername("alice");
+        request.setPassword("Password1!");
+        when(redisAuthService.allowLoginAttempt("127.0.0.1")).thenReturn(false);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> authService.login(request, "127.0.0.1"));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+        verifyNoInteractions(userRepository, passwordEncoder);
     }
 
     @Test
@@ -103,4 +201,134 @@ class AuthServiceTest {
         assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
         verifyNoInteractions(userRepository);
     }
+
+    @Test
+    void redisSessionRefreshRotatesWithoutTouchingDatabase() {
+        ReflectionTestUtils.setField(authService, "redisSessions", true);
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken("refresh-token");
+        ParsedToken presented = new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                "sid-1", "fid-1", Instant.now(), Instant.now().plusSeconds(3600));
+        when(redisAuthService.allowRefreshAttempt("127.0.0.1")).thenReturn(true);
+        when(jwtUtil.parse("refresh-token")).thenReturn(Optional.of(presented));
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(org.springframework.security.core.userdetails.User
+                .withUsername("alice").password("x").roles("ADMIN").build());
+        when(jwtUtil.issueRefreshToken(eq("alice"), eq("ADMIN"), anyString(), eq("fid-1")))
+                .thenAnswer(inv -> new ParsedToken("new-refresh-token", "alice", "ADMIN", ParsedToken.REFRESH_TYPE,
+                        inv.getArgument(2), "fid-1", Instant.now(), Instant.now().plusSeconds(3600)));
+        when(jwtUtil.generateToken(eq("alice"), eq("ADMIN"), any(ParsedToken.class))).thenReturn("new-access-token");
+        when(refreshSessionStore.rotate(eq(presented), any(), eq("127.0.0.1"), eq("JUnit")))
+                .thenReturn(RefreshSessionStore.RotationResult.OK);
+
+        TokenResponseDto response = authService.refreshToken(request, "127.0.0.1", "JUnit");
+
+        assertEquals("new-access-token", response.getToken());
+        assertEquals("new-refresh-token", response.getRefreshToken());
+        verifyNoInteractions(userSessionService, userRepository);
+    }
+
+    @Test
+    void redisSessionReuseRevokesUserTokens() {
+        ReflectionTestUtils.setField(authService, "redisSessions", true);
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken("refresh-token");
+        ParsedToken presented = new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                "sid-1", "fid-1", Instant.now(), Instant.now().plusSeconds(3600));
+        when(redisAuthService.allowRefreshAttempt("127.0.0.1")).thenReturn(true);
+        when(jwtUtil.parse("refresh-token")).thenReturn(Optional.of(presented));
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(org.springframework.security.core.userdetails.User
+                .withUsername("alice").password("x").roles("USER").build());
+        when(jwtUtil.issueRefreshToken(eq("alice"), eq("USER"), anyString(), eq("fid-1")))
+                .thenAnswer(inv -> new ParsedToken("new-refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                        inv.getArgument(2), "fid-1", Instant.now(), Instant.now().plusSeconds(3600)));
+        when(refreshSessionStore.rotate(eq(presented), any(), anyString(), anyString()))
+                .thenReturn(RefreshSessionStore.RotationResult.REUSED);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> authService.refreshToken(request, "127.0.0.1", "JUnit"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        assertEquals("Refresh token reuse detected", ex.getMessage());
+        verify(redisAuthService).revokeUserTokens("alice");
+        verify(jwtUtil, never()).generateToken(any(), any(), any());
+        verifyNoInteractions(userSessionService);
+    }
+
+    @Test
+    void redisSessionMissingFallsBackToDatabaseSessionOnce() {
+        ReflectionTestUtils.setField(authService, "redisSessions", true);
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken("refresh-token");
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        ParsedToken presented = new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                "sid-1", "fid-1", Instant.now(), expiresAt);
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("alice");
+        UserSession session = new UserSession();
+        session.setUser(user);
+        session.setSessionId("sid-1");
+        session.setFamilyId("fid-1");
+        session.setExpiresAt(expiresAt);
+        when(redisAuthService.allowRefreshAttempt("127.0.0.1")).thenReturn(true);
+        when(jwtUtil.parse("refresh-token")).thenReturn(Optional.of(presented));
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(org.springframework.security.core.userdetails.User
+                .withUsername("alice").password("x").roles("USER").build());
+        when(jwtUtil.issueRefreshToken(eq("alice"), eq("USER"), anyString(), eq("fid-1")))
+                .thenAnswer(inv -> new ParsedToken("new-refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                        inv.getArgument(2), "fid-1", Instant.now(), Instant.now().plusSeconds(3600)));
+        when(jwtUtil.generateToken(eq("alice"), eq("USER"), any(ParsedToken.class))).thenReturn("new-access-token");
+        when(refreshSessionStore.rotate(eq(presented), any(), anyString(), anyString()))
+                .thenReturn(RefreshSessionStore.RotationResult.MISSING);
+        when(userSessionService.findSession("sid-1", expiresAt)).thenReturn(Optional.of(session));
+        when(userSessionService.isRefreshTokenMatch(session, "refresh-token")).thenReturn(true);
+        when(userSessionService.revokeSession(eq("sid-1"), eq(expiresAt), anyString())).thenReturn(true);
+
+        TokenResponseDto response = authService.refreshToken(request, "127.0.0.1", "JUnit");
+
+        assertEquals("new-refresh-token", response.getRefreshToken());
+        verify(refreshSessionStore).create(argThat(token -> "new-refresh-token".equals(token.getToken())),
+                eq(7L), eq("127.0.0.1"), eq("JUnit"));
+    }
+
+    @Test
+    void refreshTokenIssuedBeforeNotBeforeIsRejectedInDatabaseMode() {
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken("refresh-token");
+        Instant issuedAt = Instant.now().minusSeconds(60);
+        ParsedToken presented = new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                "sid-1", "fid-1", issuedAt, Instant.now().plusSeconds(3600));
+        when(redisAuthService.allowRefreshAttempt("127.0.0.1")).thenReturn(true);
+        when(jwtUtil.parse("refresh-token")).thenReturn(Optional.of(presented));
+        when(redisAuthService.isTokenRevoked("alice", issuedAt)).thenReturn(true);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> authService.refreshToken(request, "127.0.0.1", "JUnit"));
+
+        assertEquals("Refresh token is revoked", ex.getMessage());
+        verify(userSessionService).revokeFamily("fid-1");
+        verify(userSessionService, never()).findSession(any(), any());
+        verify(jwtUtil, never()).generateToken(any(), any(), any());
+    }
+
+    @Test
+    void refreshTokenIssuedBeforeNotBeforeIsRejectedInRedisMode() {
+        ReflectionTestUtils.setField(authService, "redisSessions", true);
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken("refresh-token");
+        Instant issuedAt = Instant.now().minusSeconds(60);
+        ParsedToken presented = new ParsedToken("refresh-token", "alice", "USER", ParsedToken.REFRESH_TYPE,
+                "sid-1", "fid-1", issuedAt, Instant.now().plusSeconds(3600));
+        when(redisAuthService.allowRefreshAttempt("127.0.0.1")).thenReturn(true);
+        when(jwtUtil.parse("refresh-token")).thenReturn(Optional.of(presented));
+        when(redisAuthService.isTokenRevoked("alice", issuedAt)).thenReturn(true);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> authService.refreshToken(request, "127.0.0.1", "JUnit"));
+
+        assertEquals("Refresh token is revoked", ex.getMessage());
+        verify(refreshSessionStore).revokeFamily("fid-1");
+        verify(refreshSessionStore, never()).rotate(any(), any(), any(), any());
+        verifyNoInteractions(userSessionService);
+    }
 }
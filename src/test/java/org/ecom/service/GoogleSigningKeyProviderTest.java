@@ -0,0 +1,118 @@
+package org.ecom.service;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GoogleSigningKeyProviderTest {
+
+    private static final String CERTS_URL = "http://stub.local/oauth2/v1/certs";
+    private static final String CLIENT_ID = "test-client";
+
+    private final Instant now = Instant.parse("2030-01-01T00:00:00Z");
+    private final AtomicInteger fetches = new AtomicInteger();
+    private MockLowLevelHttpResponse certsResponse;
+    private GoogleSigningKeyProvider provider;
+    private GoogleIdTokenVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        certsResponse = new MockLowLevelHttpResponse()
+                .setContentType("application/json")
+                .setContent("{\"stub-kid\": " + jsonString(resource("google/stub-signer-cert.pem")) + "}")
+                .addHeader("Cache-Control", "public, max-age=3600, must-revalidate");
+        MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpRequest(new MockLowLevelHttpRequest(CERTS_URL) {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        fetches.incrementAndGet();
+                        return super.execute();
+                    }
+                }.setResponse(certsResponse))
+                .build();
+        provider = new GoogleSigningKeyProvider(transport, GsonFactory.getDefaultInstance(), CERTS_URL,
+                Clock.fixed(now, ZoneOffset.UTC));
+        verifier = new CachedKeysGoogleIdTokenVerifier(
+                new GoogleIdTokenVerifier.Builder(transport, GsonFactory.getDefaultInstance())
+                        .setAudience(List.of(CLIENT_ID))
+                        .setClock(() -> now.toEpochMilli()),
+                provider);
+    }
+
+    @Test
+    void verifiesAgainstPrefetchedKeysWithoutFetchingPerRequest() throws Exception {
+        provider.prefetch();
+
+        assertNotNull(verifier.verify(signedIdToken(CLIENT_ID)));
+        assertNotNull(verifier.verify(signedIdToken(CLIENT_ID)));
+        assertNull(verifier.verify(signedIdToken("other-client")));
+        assertEquals(1, fetches.get());
+        // max-age 3600 minus the 5 minute refresh margin
+        assertEquals(now.plusSeconds(3300).toEpochMilli(), provider.getRefreshAtMillis());
+    }
+
+    @Test
+    void failedRefreshKeepsServingLastGoodKeys() throws Exception {
+        provider.prefetch();
+        certsResponse.setStatusCode(503).setContent("unavailable");
+
+        assertThrows(IOException.class, provider::refresh);
+
+        assertEquals(1, provider.getPublicKeys().size());
+        assertNotNull(verifier.verify(signedIdToken(CLIENT_ID)));
+    }
+
+    private String signedIdToken(String audience) throws Exception {
+        String pem = resource("google/stub-signer-key.pem")
+                .replaceAll("-----[A-Z ]+-----", "")
+                .replaceAll("\\s", "");
+        PrivateKey key = KeyFactory.getInstance("RSA")
+                .generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(pem)));
+        return Jwts.builder()
+                .setHeaderParam("kid", "stub-kid")
+                .setIssuer("https://accounts.google.com")
+                .setAudience(audience)
+                .setSubject("google-123")
+                .claim("email", "alice@example.com")
+                .setIssuedAt(Date.from(now))
+                .setExpiration(Date.from(now.plusSeconds(600)))
+                .signWith(key, SignatureAlgorithm.RS256)
+                .compact();
+    }
+
+    private static String resource(String path) throws IOException {
+        try (InputStream in = GoogleSigningKeyProviderTest.class.getClassLoader().getResourceAsStream(path)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String jsonString(String value) {
+        return "\"" + value.replace("\n", "\\n") + "\"";
+    }
+}
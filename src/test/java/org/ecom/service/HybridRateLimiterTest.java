@@ -0,0 +1,50 @@
+package org.ecom.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class HybridRateLimiterTest {
+
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+    private final Clock clock = Clock.fixed(Instant.ofEpochMilli(WINDOW.toMillis() * 1000), ZoneOffset.UTC);
+
+    @Test
+    void decisionsAreLocalUntilSync() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        HybridRateLimiter limiter = new HybridRateLimiter(redis, clock);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("refresh", "10.0.0.1", 3, WINDOW));
+        }
+        assertFalse(limiter.tryAcquire("refresh", "10.0.0.1", 3, WINDOW));
+        assertTrue(limiter.tryAcquire("refresh", "10.0.0.2", 3, WINDOW));
+        verifyNoInteractions(redis);
+    }
+
+    @Test
+    void syncPullsInConsumptionFromOtherNodes() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        HybridRateLimiter limiter = new HybridRateLimiter(redis, clock);
+        assertTrue(limiter.tryAcquire("refresh", "10.0.0.1", 10, WINDOW));
+
+        // INCRBY returns the cluster-wide total for the current window: 9 other hits + ours.
+        when(redis.executePipelined(any(SessionCallback.class))).thenReturn(Arrays.asList(10L, true, null));
+        limiter.sync();
+
+        assertFalse(limiter.tryAcquire("refresh", "10.0.0.1", 10, WINDOW));
+    }
+}
@@ -0,0 +1,145 @@
+package org.ecom.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RedisAuthServiceTest {
+
+    @Mock
+    private RedisTemplate<String, UserDetails> userDetailsRedisTemplate;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, UserDetails> valueOperations;
+    @Mock
+    private HybridRateLimiter rateLimiter;
+
+    private RedisAuthService redisAuthService;
+
+    @BeforeEach
+    void setUp() {
+        redisAuthService = new RedisAuthService(userDetailsRedisTemplate, stringRedisTemplate, rateLimiter);
+        lenient().when(userDetailsRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        ReflectionTestUtils.setField(redisAuthService, "maxLoginFailedAttempts", 5L);
+        ReflectionTestUtils.setField(redisAuthService, "loginLockMinutes", 15L);
+    }
+
+    @Test
+    void userDetailsAreServedLocallyAfterFirstRedisRead() {
+        UserDetails alice = User.withUsername("alice").password("hash").roles("USER").build();
+        when(valueOperations.get("user:alice")).thenReturn(alice);
+
+        UserDetails first = redisAuthService.getUserDetailsFromCache("alice");
+        UserDetails second = redisAuthService.getUserDetailsFromCache("alice");
+
+        assertEquals("hash", first.getPassword());
+        assertEquals("hash", second.getPassword());
+        assertNotSame(first, second);
+        verify(valueOperations, times(1)).get("user:alice");
+    }
+
+    @Test
+    void evictionIsPublishedAndPeerInvalidationDropsLocalCopy() {
+        UserDetails alice = User.withUsername("alice").password("hash").roles("USER").build();
+        when(valueOperations.get("user:alice")).thenReturn(alice);
+        redisAuthService.getUserDetailsFromCache("alice");
+
+        redisAuthService.handleInvalidation("user:alice");
+        redisAuthService.getUserDetailsFromCache("alice");
+        verify(valueOperations, times(2)).get("user:alice");
+
+        redisAuthService.evictUserDetails("alice");
+        verify(stringRedisTemplate).convertAndSend(RedisAuthService.INVALIDATION_CHANNEL, "user:alice");
+    }
+
+    @Test
+    void lockedPairIsRememberedLocallyForTheRemainingLockTime() {
+        when(stringRedisTemplate.execute(any(), anyList(), any(Object[].class))).thenReturn(-60_000L);
+
+        assertFalse(redisAuthService.isLoginLockedLocally("alice", "127.0.0.1"));
+        assertFalse(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", true));
+
+        assertTrue(redisAuthService.isLoginLockedLocally("alice", "127.0.0.1"));
+        assertFalse(redisAuthService.isLoginLockedLocally("alice", "10.0.0.1"));
+    }
+
+    @Test
+    void failureThatReachesTheThresholdLocksLocally() {
+        when(stringRedisTemplate.execute(any(), anyList(), any(Object[].class))).thenReturn(4L, 5L);
+
+        assertTrue(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", false));
+        assertFalse(redisAuthService.isLoginLockedLocally("alice", "127.0.0.1"));
+
+        assertTrue(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", false));
+        assertTrue(redisAuthService.isLoginLockedLocally("alice", "127.0.0.1"));
+    }
+
+    @Test
+    void successDoesNotLockLocally() {
+        when(stringRedisTemplate.execute(any(), anyList(), any(Object[].class))).thenReturn(0L);
+
+        assertTrue(redisAuthService.registerLoginAttempt("alice", "127.0.0.1", true));
+        assertFalse(redisAuthService.isLoginLockedLocally("alice", "127.0.0.1"));
+    }
+
+    @Test
+    void tokenIssuedInTheRevocationSecondIsRevoked() {
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> stringValues = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(stringValues);
+        redisAuthService.revokeUserTokens("alice");
+        ArgumentCaptor<String> notBefore = ArgumentCaptor.forClass(String.class);
+        verify(stringValues).set(eq("auth:nbf:alice"), notBefore.capture(), anyLong(), any(TimeUnit.class));
+        Instant revokedAt = Instant.ofEpochSecond(Long.parseLong(notBefore.getValue()));
+
+        assertTrue(redisAuthService.isTokenRevoked("alice", revokedAt.minusSeconds(1)));
+        assertTrue(redisAuthService.isTokenRevoked("alice", revokedAt));
+        assertFalse(redisAuthService.isTokenRevoked("alice", revokedAt.plusSeconds(1)));
+    }
+
+    @Test
+    void perIpLoginLimitIsOffByDefault() {
+        assertTrue(redisAuthService.allowLoginAttempt("127.0.0.1"));
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    void perIpLoginLimitAppliesWhenEnabled() {
+        ReflectionTestUtils.setField(redisAuthService, "loginIpLimitEnabled", true);
+        ReflectionTestUtils.setField(redisAuthService, "maxLoginAttemptsPerWindow", 50L);
+        ReflectionTestUtils.setField(redisAuthService, "loginAttemptWindowMinutes", 15L);
+        when(rateLimiter.tryAcquire(eq("login"), eq("127.0.0.1"), eq(50L), any(Duration.class))).thenReturn(false);
+
+        assertFalse(redisAuthService.allowLoginAttempt("127.0.0.1"));
+    }
+}
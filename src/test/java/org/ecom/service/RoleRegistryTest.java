@@ -0,0 +1,70 @@
+package org.ecom.service;
+
+import org.ecom.model.Role;
+import org.ecom.repository.RoleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoleRegistryTest {
+
+    private final RoleRepository roleRepository = mock(RoleRepository.class);
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+    private final RoleRegistry registry = new RoleRegistry(roleRepository, stringRedisTemplate);
+
+    @BeforeEach
+    void setUp() {
+        when(roleRepository.findAll()).thenReturn(List.of(new Role(1, "ADMIN"), new Role(2, "USER")));
+        registry.reload();
+    }
+
+    @Test
+    void resolvesByTypeAndIdWithoutQuerying() {
+        Role user = registry.findByType("USER").orElseThrow();
+
+        assertEquals(2, user.getId());
+        assertEquals("ADMIN", registry.findById(1).orElseThrow().getType());
+        assertNotSame(user, registry.findByType("USER").orElseThrow());
+        verify(roleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void typeOfReadsOnlyTheId() {
+        assertEquals("ADMIN", registry.typeOf(new Role(1, null)));
+    }
+
+    @Test
+    void unknownTypeReloadsOnce() {
+        when(roleRepository.findAll()).thenReturn(List.of(new Role(1, "ADMIN"), new Role(2, "USER"), new Role(3, "STAFF")));
+
+        assertEquals(Optional.of(3L), registry.findByType("STAFF").map(Role::getId));
+        verify(roleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void repeatedMissesReloadAtMostOncePerInterval() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(registry.findByType("NONE" + i).isEmpty());
+        }
+
+        verify(roleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void requestReloadNotifiesOtherNodes() {
+        registry.requestReload();
+
+        verify(stringRedisTemplate).convertAndSend(RoleRegistry.RELOAD_CHANNEL, "reload");
+    }
+}
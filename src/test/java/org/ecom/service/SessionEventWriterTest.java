@@ -0,0 +1,192 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionEventWriterTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final StreamOperations<String, Object, Object> streamOperations = mock(StreamOperations.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SessionEventWriter writer = new SessionEventWriter(redisTemplate, jdbcTemplate,
+            TransactionOperations.withoutTransaction(), meterRegistry, true, 100, 1000, "node-1");
+
+    @Test
+    void groupsEventsIntoBatchStatementsInStreamOrder() {
+        SessionEventWriter.Batch batch = SessionEventWriter.Batch.of(List.of(
+                event("1-0", "type", "CREATED", "sid", "s1", "fid", "f1", "user", "alice", "uid", "7", "hash", "h1",
+                        "exp", "2000", "at", "1000", "ip", "1.1.1.1", "ua", "JUnit"),
+                event("2-0", "type", "ROTATED", "sid", "s2", "old", "s1", "oldexp", "2000", "fid", "f1", "user", "alice", "hash", "h2",
+                        "exp", "3000", "at", "1500", "ip", "1.1.1.1", "ua", "JUnit"),
+                event("3-0", "type", "REVOKED", "sid", "s2", "exp", "3000", "at", "1600"),
+                event("4-0", "type", "FAMILY_REVOKED", "fid", "f1", "at", "1700"),
+                event("5-0", "type", "REVOKED", "sid", "s0", "at", "1800")));
+
+        assertEquals(2, batch.inserts().size());
+        assertEquals("s1", batch.inserts().get(0)[0]);
+        assertEquals(7L, batch.inserts().get(0)[2]);
+        // No uid: an event queued before user ids were recorded, resolved by username in SQL.
+        assertNull(batch.inserts().get(1)[2]);
+        assertEquals("alice", batch.inserts().get(1)[3]);
+        assertEquals(2, batch.sessionRevokes().size());
+        assertArrayEquals(new Object[]{"s2", "s1"},
+                new Object[]{batch.sessionRevokes().get(0)[1], batch.sessionRevokes().get(0)[2]});
+        assertEquals(Instant.ofEpochMilli(2000), ((OffsetDateTime) batch.sessionRevokes().get(0)[3]).toInstant());
+        assertEquals("s2", batch.sessionRevokes().get(1)[2]);
+        assertEquals(Instant.ofEpochMilli(3000), ((OffsetDateTime) batch.sessionRevokes().get(1)[3]).toInstant());
+        // Queued before expiries were recorded: revoked without partition pruning.
+        assertEquals(1, batch.legacySessionRevokes().size());
+        assertEquals("s0", batch.legacySessionRevokes().get(0)[2]);
+        assertEquals(1, batch.familyRevokes().size());
+        assertEquals("f1", batch.familyRevokes().get(0)[1]);
+    }
+
+    @Test
+    void acknowledgesOnlyAfterTheBatchIsWritten() {
+        doReturn(streamOperations).when(redisTemplate).opsForStream();
+
+        writer.writeAll(List.of(event("1-0", "type", "REVOKED", "sid", "s1", "at", "1000")));
+
+        verify(jdbcTemplate).batchUpdate(anyString(), anyList());
+        verify(streamOperations).acknowledge(eq(RefreshSessionStore.EVENT_STREAM), eq(SessionEventWriter.GROUP),
+                eq(RecordId.of("1-0")));
+    }
+
+    @Test
+    void failedWriteLeavesEntriesPending() {
+        doReturn(streamOperations).when(redisTemplate).opsForStream();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new QueryTimeoutException("timeout"));
+
+        assertThrows(QueryTimeoutException.class,
+                () -> writer.writeAll(List.of(event("1-0", "type", "REVOKED", "sid", "s1", "at", "1000"))));
+
+        verify(streamOperations, never()).acknowledge(anyString(), anyString(), any(RecordId[].class));
+    }
+
+    @Test
+    void malformedEventIsDeadLetteredWithoutBlockingTheRest() {
+        doReturn(streamOperations).when(redisTemplate).opsForStream();
+
+        writer.writeAll(List.of(
+                event("1-0", "type", "REVOKED", "sid", "s1", "at", "not-a-number"),
+                event("2-0", "type", "REVOKED", "sid", "s2", "at", "1000")));
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+        verify(streamOperations).add(eq(SessionEventWriter.DEAD_LETTER_STREAM),
+                argThat((Map<String, String> fields) -> "1-0".equals(fields.get("source_id")) && "s1".equals(fields.get("sid"))));
+        verify(streamOperations).acknowledge(RefreshSessionStore.EVENT_STREAM, SessionEventWriter.GROUP, RecordId.of("1-0"));
+        verify(streamOperations).acknowledge(RefreshSessionStore.EVENT_STREAM, SessionEventWriter.GROUP, RecordId.of("2-0"));
+    }
+
+    @Test
+    void rejectedBatchIsRetriedRowByRow() {
+        doReturn(streamOperations).when(redisTemplate).opsForStream();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("value too long"))
+                .thenReturn(new int[]{1})
+                .thenThrow(new DataIntegrityViolationException("value too long"));
+
+        writer.writeAll(List.of(
+                event("1-0", "type", "REVOKED", "sid", "s1", "at", "1000"),
+                event("2-0", "type", "REVOKED", "sid", "s2", "at", "1000")));
+
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList());
+        verify(streamOperations).add(eq(SessionEventWriter.DEAD_LETTER_STREAM),
+                argThat((Map<String, String> fields) -> "2-0".equals(fields.get("source_id"))));
+        verify(streamOperations, times(2)).acknowledge(anyString(), anyString(), any(RecordId[].class));
+    }
+
+    @Test
+    void trimKeepsEverythingFromTheOldestPendingEntry() {
+        stubGroup("9-0", new PendingMessagesSummary(SessionEventWriter.GROUP, 2, Range.closed("4-0", "5-0"), Map.of()));
+        when(streamOperations.size(RefreshSessionStore.EVENT_STREAM)).thenReturn(6L);
+
+        writer.trimAcknowledged();
+
+        assertEquals("MINID ~ 4-0", trimArguments());
+        assertEquals(6.0, meterRegistry.get("session.events.backlog").gauge().value());
+        assertEquals(2.0, meterRegistry.get("session.events.pending").gauge().value());
+    }
+
+    @Test
+    void trimWithNothingPendingStopsAtTheLastDeliveredEntry() {
+        stubGroup("9-0", new PendingMessagesSummary(SessionEventWriter.GROUP, 0, Range.unbounded(), Map.of()));
+
+        writer.trimAcknowledged();
+
+        assertEquals("MINID ~ 9-0", trimArguments());
+    }
+
+    private void stubGroup(String lastDelivered, PendingMessagesSummary pending) {
+        doReturn(streamOperations).when(redisTemplate).opsForStream();
+        StreamInfo.XInfoGroup group = mock(StreamInfo.XInfoGroup.class);
+        when(group.groupName()).thenReturn(SessionEventWriter.GROUP);
+        when(group.lastDeliveredId()).thenReturn(lastDelivered);
+        StreamInfo.XInfoGroups groups = mock(StreamInfo.XInfoGroups.class);
+        when(groups.stream()).thenReturn(Stream.of(group));
+        when(streamOperations.groups(RefreshSessionStore.EVENT_STREAM)).thenReturn(groups);
+        when(streamOperations.pending(RefreshSessionStore.EVENT_STREAM, SessionEventWriter.GROUP)).thenReturn(pending);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String trimArguments() {
+        ArgumentCaptor<RedisCallback<Object>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate).execute(callback.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        ArgumentCaptor<byte[]> args = ArgumentCaptor.forClass(byte[].class);
+        verify(connection).execute(eq("XTRIM"), args.capture(), args.capture(), args.capture(), args.capture());
+        List<byte[]> values = args.getAllValues();
+        assertEquals(RefreshSessionStore.EVENT_STREAM, new String(values.get(0)));
+        return String.join(" ", values.subList(1, values.size()).stream().map(String::new).toList());
+    }
+
+    private static MapRecord<String, Object, Object> event(String id, String... fields) {
+        Map<Object, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i += 2) {
+            values.put(fields[i], fields[i + 1]);
+        }
+        return StreamRecords.<String, Object, Object>mapBacked(values)
+                .withStreamKey(RefreshSessionStore.EVENT_STREAM)
+                .withId(RecordId.of(id));
+    }
+}
@@ -0,0 +1,113 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionPartitionMaintainerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final Connection connection = mock(Connection.class);
+    private final Statement statement = mock(Statement.class);
+    private final PreparedStatement lockStatement = mock(PreparedStatement.class);
+    private final ResultSet lockResult = mock(ResultSet.class);
+    private final ResultSet partitions = mock(ResultSet.class);
+    private final Clock clock = Clock.fixed(Instant.parse("2030-06-15T10:00:00Z"), ZoneOffset.UTC);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+        when(connection.prepareStatement(anyString())).thenReturn(lockStatement);
+        when(lockStatement.executeQuery()).thenReturn(lockResult);
+        when(lockResult.next()).thenReturn(true);
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(partitions);
+        when(partitions.next()).thenReturn(true, true, true, true, false);
+        when(partitions.getString(1)).thenReturn(
+                "user_sessions_default", "user_sessions_p20300605", "user_sessions_p20300606", "user_sessions_p20300615");
+    }
+
+    @Test
+    void createsPartitionsAheadAndDropsDaysPastRetention() throws Exception {
+        // 1-day refresh tokens, 7-day retention: keep from 2030-06-07 (7 + 1 safety day back).
+        SessionPartitionMaintainer maintainer = new SessionPartitionMaintainer(jdbcTemplate, meterRegistry, clock, true, 3,
+                Duration.ofDays(1).toMillis(), 168);
+
+        maintainer.maintain();
+
+        // today - 1 through today + 3, except today which already exists
+        verify(statement, times(4)).execute(startsWith("CREATE TABLE user_sessions_p"));
+        verify(statement, never()).execute(startsWith("CREATE TABLE user_sessions_p20300615"));
+        verify(statement).execute("CREATE TABLE user_sessions_p20300618 (LIKE user_sessions INCLUDING DEFAULTS)");
+        verify(statement).executeUpdate("WITH moved AS (DELETE FROM user_sessions_default"
+                + " WHERE expires_at >= '2030-06-18' AND expires_at < '2030-06-19' RETURNING *)"
+                + " INSERT INTO user_sessions_p20300618 SELECT * FROM moved");
+        verify(statement).execute(
+                "ALTER TABLE user_sessions ATTACH PARTITION user_sessions_p20300618 FOR VALUES FROM ('2030-06-18') TO ('2030-06-19')");
+        verify(connection, times(4)).commit();
+        verify(statement).execute("ALTER TABLE user_sessions DETACH PARTITION user_sessions_p20300605");
+        verify(statement).execute("DROP TABLE user_sessions_p20300605");
+        verify(statement).execute("ALTER TABLE user_sessions DETACH PARTITION user_sessions_p20300606");
+        verify(statement, never()).execute("DROP TABLE user_sessions_p20300615");
+        verify(statement, never()).execute("DROP TABLE user_sessions_default");
+    }
+
+    @Test
+    void failedPartitionIsRolledBackAndCounted() throws Exception {
+        doThrow(new SQLException("updated partition constraint for default partition would be violated"))
+                .when(statement).execute(startsWith("ALTER TABLE user_sessions ATTACH PARTITION user_sessions_p20300616 "));
+        SessionPartitionMaintainer maintainer = new SessionPartitionMaintainer(jdbcTemplate, meterRegistry, clock, true, 3,
+                Duration.ofDays(1).toMillis(), 168);
+
+        maintainer.maintain();
+
+        verify(connection).rollback();
+        verify(connection, times(3)).commit();
+        assertEquals(1.0, meterRegistry.counter("session.partition.failures").count());
+    }
+
+    @Test
+    void premakeCoversLongRefreshLifetimes() throws Exception {
+        SessionPartitionMaintainer maintainer = new SessionPartitionMaintainer(jdbcTemplate, meterRegistry, clock, true, 3,
+                Duration.ofDays(30).toMillis(), 168);
+
+        maintainer.maintain();
+
+        verify(statement).execute(startsWith("CREATE TABLE user_sessions_p20300716 "));
+    }
+
+    @Test
+    void parsesOnlyDailyPartitionNames() {
+        assertEquals(LocalDate.of(2030, 6, 5), SessionPartitionMaintainer.partitionDay("user_sessions_p20300605"));
+        assertNull(SessionPartitionMaintainer.partitionDay("user_sessions_default"));
+        assertNull(SessionPartitionMaintainer.partitionDay("user_sessions_pbackup"));
+    }
+}
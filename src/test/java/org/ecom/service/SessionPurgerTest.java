@@ -0,0 +1,67 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionPurgerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final Connection connection = mock(Connection.class);
+    private final PreparedStatement lockStatement = mock(PreparedStatement.class);
+    private final PreparedStatement unlockStatement = mock(PreparedStatement.class);
+    private final PreparedStatement deleteStatement = mock(PreparedStatement.class);
+    private final ResultSet lockResult = mock(ResultSet.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SessionPurger purger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+        when(connection.prepareStatement("SELECT pg_try_advisory_lock(?)")).thenReturn(lockStatement);
+        when(connection.prepareStatement("SELECT pg_advisory_unlock(?)")).thenReturn(unlockStatement);
+        when(connection.prepareStatement(startsWith("DELETE FROM user_sessions"))).thenReturn(deleteStatement);
+        when(lockStatement.executeQuery()).thenReturn(lockResult);
+        when(unlockStatement.executeQuery()).thenReturn(mock(ResultSet.class));
+        when(lockResult.next()).thenReturn(true);
+        purger = new SessionPurger(jdbcTemplate, meterRegistry, true, 100, 0, 10, 168);
+    }
+
+    @Test
+    void deletesInChunksUntilAPartialChunkAndReleasesLock() throws Exception {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(deleteStatement.executeUpdate()).thenReturn(100, 100, 40);
+
+        assertEquals(240, purger.purge());
+
+        verify(deleteStatement, times(3)).executeUpdate();
+        verify(unlockStatement).executeQuery();
+        assertEquals(240.0, meterRegistry.counter("session.purge.deleted").count());
+    }
+
+    @Test
+    void skipsRunWhenAnotherNodeHoldsTheLock() throws Exception {
+        when(lockResult.getBoolean(1)).thenReturn(false);
+
+        assertEquals(0, purger.purge());
+
+        verify(connection, never()).prepareStatement(startsWith("DELETE FROM user_sessions"));
+        verify(unlockStatement, never()).executeQuery();
+    }
+}
@@ -0,0 +1,118 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionTouchBufferTest {
+
+    private static final Instant EXPIRES_AT = Instant.parse("2030-01-08T00:00:00Z");
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalescesToLatestTimestampPerSessionInOneBatch() {
+        SessionTouchBuffer buffer = new SessionTouchBuffer(jdbcTemplate, meterRegistry, 100, 1000, Runnable::run);
+        Instant t0 = Instant.parse("2030-01-01T00:00:00Z");
+        for (int i = 0; i < 50; i++) {
+            buffer.touch("sid-a", EXPIRES_AT, t0.plusSeconds(i));
+            buffer.touch("sid-b", EXPIRES_AT, t0.minusSeconds(i));
+        }
+
+        buffer.flush();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture());
+        assertEquals(2, rows.getValue().size());
+        for (Object[] row : rows.getValue()) {
+            Instant expected = "sid-a".equals(row[1]) ? t0.plusSeconds(49) : t0;
+            assertEquals(expected, ((OffsetDateTime) row[0]).toInstant());
+            assertEquals(EXPIRES_AT, ((OffsetDateTime) row[2]).toInstant());
+        }
+        assertEquals(0, buffer.pendingCount());
+    }
+
+    @Test
+    void flushesWhenThresholdReachedAndKeepsEntriesOnFailure() {
+        SessionTouchBuffer buffer = new SessionTouchBuffer(jdbcTemplate, meterRegistry, 3, 1000, Runnable::run);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new QueryTimeoutException("db down"));
+
+        buffer.touch("sid-1", EXPIRES_AT, Instant.now());
+        buffer.touch("sid-2", EXPIRES_AT, Instant.now());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        buffer.touch("sid-3", EXPIRES_AT, Instant.now());
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+        assertEquals(3, buffer.pendingCount());
+    }
+
+    @Test
+    void thresholdFlushRunsOffTheCallingThreadAndIsQueuedOnce() {
+        List<Runnable> queued = new ArrayList<>();
+        SessionTouchBuffer buffer = new SessionTouchBuffer(jdbcTemplate, meterRegistry, 2, 1000, queued::add);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.touch("sid-" + i, EXPIRES_AT, Instant.now());
+        }
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+        assertEquals(0, buffer.pendingCount());
+    }
+
+    @Test
+    void thresholdFlushesPauseAfterAFailureUntilAFlushSucceeds() {
+        List<Runnable> queued = new ArrayList<>();
+        SessionTouchBuffer buffer = new SessionTouchBuffer(jdbcTemplate, meterRegistry, 1, 1000, queued::add);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new QueryTimeoutException("db down"))
+                .thenReturn(new int[]{1, 1});
+
+        buffer.touch("sid-1", EXPIRES_AT, Instant.now());
+        queued.remove(0).run();
+        buffer.touch("sid-2", EXPIRES_AT, Instant.now());
+        assertTrue(queued.isEmpty());
+
+        buffer.flush();
+        buffer.touch("sid-3", EXPIRES_AT, Instant.now());
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    void failedFlushesCannotGrowTheBufferPastItsCap() {
+        SessionTouchBuffer buffer = new SessionTouchBuffer(jdbcTemplate, meterRegistry, 1000, 3, Runnable::run);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new QueryTimeoutException("db down"));
+        Instant t0 = Instant.parse("2030-01-01T00:00:00Z");
+
+        for (int i = 0; i < 5; i++) {
+            buffer.touch("sid-" + i, EXPIRES_AT, t0);
+        }
+        buffer.flush();
+        buffer.touch("sid-0", EXPIRES_AT, t0.plusSeconds(1));
+        buffer.touch("sid-9", EXPIRES_AT, t0.plusSeconds(1));
+
+        assertEquals(3, buffer.pendingCount());
+        assertEquals(3.0, meterRegistry.counter("session.touch.dropped").count());
+    }
+}
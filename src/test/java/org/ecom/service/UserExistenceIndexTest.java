@@ -0,0 +1,77 @@
+package org.ecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserExistenceIndexTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserExistenceIndex index = new UserExistenceIndex(jdbcTemplate,
+            TransactionOperations.withoutTransaction(), redisTemplate, meterRegistry, 1000, 0.01, 100);
+
+    @Test
+    void sendsEverythingToDatabaseUntilBuilt() {
+        assertTrue(index.mightContainUsername("anyone"));
+        assertTrue(index.mightContainEmail("anyone@example.com"));
+    }
+
+    @Test
+    void answersFromTableScanAndUpdates() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString(1)).thenReturn("alice");
+        when(rs.getString(2)).thenReturn("alice@example.com");
+        doAnswer(inv -> {
+            inv.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        index.rebuild();
+
+        assertTrue(index.mightContainUsername("alice"));
+        assertTrue(index.mightContainEmail("alice@example.com"));
+        assertFalse(index.mightContainUsername("bob"));
+
+        index.handleUpdate("u:bob");
+        index.add("carol", "carol@example.com");
+
+        assertTrue(index.mightContainUsername("bob"));
+        assertTrue(index.mightContainEmail("carol@example.com"));
+        verify(redisTemplate).convertAndSend(UserExistenceIndex.UPDATE_CHANNEL, "u:carol\ne:carol@example.com");
+        assertEquals(1, meterRegistry.get("user.exists.checks").tag("result", "skipped").counter().count());
+        assertTrue(meterRegistry.get("user.exists.filter.bytes").tag("filter", "email").gauge().value() > 0);
+    }
+
+    @Test
+    void publishesABatchAsOneMessageAndAppliesEveryLine() {
+        index.addAll(List.of("dave", "erin"), List.of("dave@example.com"));
+
+        verify(redisTemplate).convertAndSend(UserExistenceIndex.UPDATE_CHANNEL, "u:dave\nu:erin\ne:dave@example.com");
+
+        UserExistenceIndex peer = new UserExistenceIndex(jdbcTemplate, TransactionOperations.withoutTransaction(),
+                redisTemplate, new SimpleMeterRegistry(), 1000, 0.01, 100);
+        peer.rebuild();
+        peer.handleUpdate("u:dave\nu:erin\ne:dave@example.com");
+
+        assertTrue(peer.mightContainUsername("erin"));
+        assertTrue(peer.mightContainEmail("dave@example.com"));
+    }
+}
@@ -0,0 +1,122 @@
+package org.ecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ecom.exception.BusinessException;
+import org.ecom.mapper.UserMapperImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserExportServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final UserExportService exportService =
+            new UserExportService(jdbcTemplate, TransactionOperations.withoutTransaction(), new UserMapperImpl(),
+                    new ObjectMapper(), 2, 1, 30_000);
+
+    @Test
+    void writesOneNdjsonLinePerRow() throws SQLException {
+        streamRows(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = exportService.export(UserExportService.Format.NDJSON, () -> out);
+
+        assertEquals(3, written);
+        verify(jdbcTemplate).execute("SET LOCAL idle_in_transaction_session_timeout = 30000");
+        assertEquals("""
+                {"username":"user1","role":"USER"}
+                {"username":"user2","role":"USER"}
+                {"username":"user3","role":"USER"}
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void quotesCsvValuesThatNeedIt() {
+        assertEquals("alice", UserExportService.csv("alice"));
+        assertEquals("\"a,b\"", UserExportService.csv("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", UserExportService.csv("say \"hi\""));
+    }
+
+    @Test
+    void prefixesCsvCellsThatLookLikeFormulas() {
+        assertEquals("'=1+2", UserExportService.csv("=1+2"));
+        assertEquals("'+1", UserExportService.csv("+1"));
+        assertEquals("'-1", UserExportService.csv("-1"));
+        assertEquals("'@SUM(A1)", UserExportService.csv("@SUM(A1)"));
+        assertEquals("\"'=1,2\"", UserExportService.csv("=1,2"));
+        assertEquals("a=b", UserExportService.csv("a=b"));
+    }
+
+    @Test
+    void rejectsExportsBeyondTheConcurrencyBudget() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            inside.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        Thread first = new Thread(() -> exportService.export(UserExportService.Format.CSV, ByteArrayOutputStream::new));
+        first.start();
+        assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> exportService.export(UserExportService.Format.CSV, ByteArrayOutputStream::new));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+        release.countDown();
+        first.join();
+    }
+
+    @Test
+    void stopsQuietlyWhenClientDisconnects() throws SQLException {
+        streamRows(10);
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        long written = exportService.export(UserExportService.Format.CSV, () -> disconnected);
+
+        // The first flush after one fetch batch (2 rows) hits the closed connection.
+        assertEquals(2, written);
+    }
+
+    private void streamRows(int count) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        long[] row = {0};
+        when(rs.getLong(1)).thenAnswer(inv -> row[0]);
+        when(rs.getString(2)).thenAnswer(inv -> "user" + row[0]);
+        when(rs.getString(3)).thenReturn("USER");
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (row[0] = 1; row[0] <= count; row[0]++) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+}
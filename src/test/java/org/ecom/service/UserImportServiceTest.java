@@ -0,0 +1,181 @@
+package org.ecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ecom.dto.UserImportJobDto;
+import jakarta.validation.Validation;
+import org.ecom.dto.UserImportReportDto;
+import org.ecom.exception.BusinessException;
+import org.ecom.model.Role;
+import org.ecom.model.User;
+import org.ecom.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserImportServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final RoleRegistry roleRegistry = mock(RoleRegistry.class);
+    private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+    private final UserExistenceIndex userExistenceIndex = mock(UserExistenceIndex.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Map<String, String> redis = new HashMap<>();
+    private UserImportService importService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(values);
+        doAnswer(inv -> redis.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+        when(values.get(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        // Runs the import job inline, so the tests can read the finished job right after startImport.
+        importService = new UserImportService(userRepository, roleRegistry, passwordEncoder, userExistenceIndex,
+                TransactionOperations.withoutTransaction(), Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper().findAndRegisterModules(), stringRedisTemplate, executor,
+                new ExecutorServiceAdapter(new SyncTaskExecutor()), 2);
+        Role role = new Role();
+        role.setType("USER");
+        when(roleRegistry.findByType("USER")).thenReturn(Optional.of(role));
+        when(passwordEncoder.encode(anyString())).thenAnswer(inv -> "hashed:" + inv.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importsValidRowsInBatchesAndReportsTheRest() {
+        when(userRepository.findExistingUsernames(anyCollection())).thenReturn(List.of("taken"));
+        when(userRepository.findExistingEmails(anyCollection())).thenReturn(List.of());
+        String csv = """
+                username,email,password
+                alice,alice@example.com,Password1!
+                bob,bob@example.com,weak
+                carol,carol@example.com,Password1!
+                alice,alice2@example.com,Password1!
+                taken,taken@example.com,Password1!
+                dave,"dave@example.com",Password1!
+                """;
+
+        UserImportReportDto report = importAndGetReport(UserImportService.Format.CSV, csv);
+
+        assertEquals(3, report.getImported());
+        assertEquals(3, report.getFailed());
+        assertEquals(List.of(3L, 5L, 6L), report.getErrors().stream().map(UserImportReportDto.RowError::getLine).toList());
+        assertEquals("Username already exists", report.getErrors().get(2).getMessage());
+        ArgumentCaptor<List<User>> saved = ArgumentCaptor.forClass(List.class);
+        verify(userRepository, times(2)).saveAll(saved.capture());
+        assertEquals(2, saved.getAllValues().get(0).size());
+        assertEquals("hashed:Password1!", saved.getAllValues().get(0).get(0).getPassword());
+        assertEquals("dave@example.com", saved.getAllValues().get(1).get(0).getEmail());
+    }
+
+    @Test
+    void readsNdjson() {
+        String ndjson = """
+                {"username":"alice","email":"alice@example.com","password":"Password1!"}
+                not json
+                """;
+
+        UserImportReportDto report = importAndGetReport(UserImportService.Format.NDJSON, ndjson);
+
+        assertEquals(1, report.getImported());
+        assertEquals("Malformed row", report.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    void rejectsCsvWithoutHeader() {
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> importService.startImport(UserImportService.Format.CSV, stream("alice,a@example.com,Password1!\n")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        assertTrue(redis.isEmpty());
+    }
+
+    @Test
+    void acceptsTheJobAndRecordsItsOutcome() {
+        when(userRepository.findExistingUsernames(anyCollection())).thenReturn(List.of());
+        when(userRepository.findExistingEmails(anyCollection())).thenReturn(List.of());
+        String csv = "username,email,password\nalice,alice@example.com,Password1!\n";
+
+        UserImportJobDto accepted = importService.startImport(UserImportService.Format.CSV, stream(csv));
+        UserImportJobDto finished = importService.getJob(accepted.getId());
+
+        assertEquals(UserImportJobDto.Status.RUNNING, accepted.getStatus());
+        assertNull(accepted.getReport());
+        assertEquals(UserImportJobDto.Status.COMPLETED, finished.getStatus());
+        assertNotNull(finished.getFinishedAt());
+        assertEquals(1, finished.getReport().getImported());
+        // The slot is free again once the job is done.
+        importService.startImport(UserImportService.Format.CSV, stream(csv));
+    }
+
+    @Test
+    void failedJobIsReported() {
+        when(userRepository.findExistingUsernames(anyCollection())).thenThrow(new IllegalStateException("db down"));
+        String csv = "username,email,password\nalice,alice@example.com,Password1!\n";
+
+        UserImportJobDto accepted = importService.startImport(UserImportService.Format.CSV, stream(csv));
+        UserImportJobDto finished = importService.getJob(accepted.getId());
+
+        assertEquals(UserImportJobDto.Status.FAILED, finished.getStatus());
+        assertEquals("User import failed", finished.getError());
+    }
+
+    @Test
+    void unknownJobIsNotFound() {
+        BusinessException ex = assertThrows(BusinessException.class, () -> importService.getJob("missing"));
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatus());
+    }
+
+    @Test
+    void splitsQuotedCsvFields() {
+        assertEquals(List.of("a,b", "say \"hi\"", ""), UserImportService.parseCsvLine("\"a,b\",\"say \"\"hi\"\"\","));
+    }
+
+    private UserImportReportDto importAndGetReport(UserImportService.Format format, String content) {
+        return importService.getJob(importService.startImport(format, stream(content)).getId()).getReport();
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
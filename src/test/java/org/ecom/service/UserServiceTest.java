@@ -1,37 +1,69 @@
 package org.ecom.service;
 
+import org.ecom.dto.CursorPageDto;
 import org.ecom.dto.UserRequestDto;
+import org.ecom.dto.UserViewDto;
 import org.ecom.exception.BusinessException;
 import org.ecom.mapper.UserMapper;
 import org.ecom.model.Role;
 import org.ecom.model.User;
-import org.ecom.repository.RoleRepository;
 import org.ecom.repository.UserRepository;
+import org.ecom.repository.UserViewRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class UserServiceTest {
 
+    private static final Set<UserViewDto.Field> ALL_FIELDS = EnumSet.allOf(UserViewDto.Field.class);
+
     @Mock
     private UserRepository userRepository;
     @Mock
-    private RoleRepository roleRepository;
+    private RoleRegistry roleRegistry;
     @Mock
     private UserMapper userMapper;
     @Mock
     private PasswordEncoder passwordEncoder;
+    @Mock
+    private RedisAuthService redisAuthService;
+    @Mock
+    private UserExistenceIndex userExistenceIndex;
+    @Mock
+    private UserSessionService userSessionService;
+    @Mock
+    private RefreshSessionStore refreshSessionStore;
 
     @InjectMocks
     private UserService userService;
@@ -51,9 +83,7 @@ class UserServiceTest {
         entity.setUsername("alice");
         entity.setPassword("Password1!");
 
-        when(userRepository.findByUsername("alice")).thenReturn(Optional.empty());
-        when(userRepository.findByEmail("alice@example.com")).thenReturn(Optional.empty());
-        when(roleRepository.findByType("USER")).thenReturn(Optional.of(role));
+        when(roleRegistry.findByType("USER")).thenReturn(Optional.of(role));
         when(userMapper.toEntity(request)).thenReturn(entity);
         when(passwordEncoder.encode("Password1!")).thenReturn("hashed-password");
         when(userRepository.save(entity)).thenReturn(entity);
@@ -62,6 +92,52 @@ class UserServiceTest {
 
         assertEquals("USER", saved.getRole().getType());
         assertEquals("hashed-password", saved.getPassword());
+        verify(userExistenceIndex).add("alice", null);
+    }
+
+    @Test
+    void createUserReportsEmailTakenOnAnotherNodeAsBadRequest() {
+        UserRequestDto request = new UserRequestDto();
+        request.setUsername("alice");
+        request.setEmail("alice@example.com");
+        request.setPassword("Password1!");
+        request.setConfirmPassword("Password1!");
+        User entity = new User();
+        entity.setUsername("alice");
+        entity.setPassword("Password1!");
+        when(roleRegistry.findByType("USER")).thenReturn(Optional.of(new Role()));
+        when(userMapper.toEntity(request)).thenReturn(entity);
+        when(passwordEncoder.encode("Password1!")).thenReturn("hashed-password");
+        when(userRepository.save(entity)).thenThrow(uniqueViolation("uk_users_email"));
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> userService.createUser(request));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        assertEquals("Email already exists", ex.getMessage());
+        verify(userExistenceIndex, never()).add(any(), any());
+    }
+
+    @Test
+    void createUserMapsUsernameConstraintAndRethrowsOtherViolations() {
+        UserRequestDto request = new UserRequestDto();
+        request.setUsername("alice");
+        request.setEmail("alice@example.com");
+        request.setPassword("Password1!");
+        request.setConfirmPassword("Password1!");
+        User entity = new User();
+        entity.setUsername("alice");
+        entity.setPassword("Password1!");
+        when(roleRegistry.findByType("USER")).thenReturn(Optional.of(new Role()));
+        when(userMapper.toEntity(request)).thenReturn(entity);
+        when(passwordEncoder.encode("Password1!")).thenReturn("hashed-password");
+        // The message mentions email, but only the constraint name decides.
+        DataIntegrityViolationException otherViolation = uniqueViolation("users_google_id_key");
+        when(userRepository.save(entity)).thenThrow(uniqueViolation("users_username_key"), otherViolation);
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> userService.createUser(request));
+        assertEquals("Username already exists", ex.getMessage());
+
+        assertSame(otherViolation, assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(request)));
     }
 
     @Test
@@ -72,9 +148,7 @@ class UserServiceTest {
         request.setPassword("Password1!");
         request.setConfirmPassword("Password1!");
 
-        when(userRepository.findByUsername("alice")).thenReturn(Optional.empty());
-        when(userRepository.findByEmail("alice@example.com")).thenReturn(Optional.empty());
-        when(roleRepository.findByType("USER")).thenReturn(Optional.empty());
+        when(roleRegistry.findByType("USER")).thenReturn(Optional.empty());
 
         BusinessException ex = assertThrows(BusinessException.class, () -> userService.createUser(request));
 
@@ -96,8 +170,6 @@ class UserServiceTest {
         existing.setPassword("old");
 
         when(userRepository.findById(1L)).thenReturn(Optional.of(existing));
-        when(userRepository.findByUsername("alice.new")).thenReturn(Optional.empty());
-        when(userRepository.findByEmail("alice.new@example.com")).thenReturn(Optional.empty());
         when(passwordEncoder.encode("Password1!")).thenReturn("hashed-password");
         when(userRepository.save(existing)).thenReturn(existing);
 
@@ -106,6 +178,24 @@ class UserServiceTest {
         assertEquals("alice.new", updated.getUsername());
         assertEquals("alice.new@example.com", updated.getEmail());
         assertEquals("hashed-password", updated.getPassword());
+        verify(redisAuthService).apply(argThat(mutation -> mutation.getRevokedUserTokens().contains("alice")
+                && mutation.getEvictedUsers().contains("alice")));
+        verify(userSessionService).revokeUserSessions(1L);
+        verify(refreshSessionStore).revokeUser("alice");
+    }
+
+    @Test
+    void deleteUserRevokesSessionsInBothStores() {
+        User existing = new User();
+        existing.setId(1L);
+        existing.setUsername("alice");
+        when(userRepository.findById(1L)).thenReturn(Optional.of(existing));
+
+        userService.deleteUser(1L);
+
+        verify(userSessionService).revokeUserSessions(1L);
+        verify(refreshSessionStore).revokeUser("alice");
+        verify(userRepository).delete(existing);
     }
 
     @Test
@@ -122,4 +212,112 @@ class UserServiceTest {
 
         assertEquals(HttpStatus.NOT_FOUND, ex.getStatus());
     }
+
+    @Test
+    void existUsernameSkipsDatabaseOnDefiniteMiss() {
+        when(userExistenceIndex.mightContainUsername("new.user")).thenReturn(false);
+
+        assertFalse(userService.existUsername("new.user"));
+        verify(userRepository, never()).existsByUsername(anyString());
+    }
+
+    @Test
+    void existEmailConfirmsPossibleHitAndCountsFalsePositive() {
+        when(userExistenceIndex.mightContainEmail("maybe@example.com")).thenReturn(true);
+        when(userRepository.existsByEmail("maybe@example.com")).thenReturn(false);
+
+        assertFalse(userService.existEmail("maybe@example.com"));
+        verify(userExistenceIndex).recordFalsePositive();
+    }
+
+    @Test
+    void findAfterReturnsCursorOfLastRowWhenMoreRowsFollow() {
+        List<UserViewRepository.UserView> rows = LongStream.rangeClosed(11, 14).mapToObj(UserServiceTest::viewWithId).toList();
+        when(userRepository.findViews(10L, 0, 4, ALL_FIELDS)).thenReturn(rows);
+
+        CursorPageDto<UserViewDto> page = userService.findAfter(UserService.encodeCursor(10L), 3, false, ALL_FIELDS);
+
+        assertEquals(3, page.getItems().size());
+        assertEquals(13L, UserService.decodeCursor(page.getNextCursor()));
+        assertNull(page.getTotal());
+        verify(userRepository, never()).count();
+    }
+
+    @Test
+    void findAfterCapsPageSizeAndEndsWithoutCursor() {
+        when(userRepository.findViews(eq(0L), eq(0L), anyInt(), any())).thenReturn(List.of(viewWithId(1L)));
+
+        CursorPageDto<UserViewDto> page = userService.findAfter(null, 10_000, false, ALL_FIELDS);
+
+        assertNull(page.getNextCursor());
+        verify(userRepository).findViews(0L, 0L, 101, ALL_FIELDS);
+    }
+
+    @Test
+    void findAfterRejectsMalformedCursor() {
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> userService.findAfter("not a cursor", 10, false, ALL_FIELDS));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+    }
+
+    @Test
+    void findSliceSkipsCountQuery() {
+        when(userRepository.findViews(0L, 40L, 21, ALL_FIELDS)).thenReturn(List.of(viewWithId(41L)));
+
+        Slice<UserViewDto> page = userService.findSlice(2, 20, ALL_FIELDS);
+
+        assertEquals(1, page.getNumberOfElements());
+        assertFalse(page.hasNext());
+        verify(userRepository, never()).count();
+    }
+
+    @Test
+    void findAllReturnsAPageWithTheTotal() {
+        when(userRepository.findViews(0L, 0L, 11, ALL_FIELDS)).thenReturn(List.of(viewWithId(1L), viewWithId(2L)));
+        when(userRepository.count()).thenReturn(2L);
+
+        Page<UserViewDto> page = userService.findAll(0, 10, ALL_FIELDS);
+
+        assertEquals(2, page.getTotalElements());
+        assertEquals(1, page.getTotalPages());
+        assertEquals("user1", page.getContent().get(0).getUsername());
+    }
+
+    @Test
+    void findAllRejectsOffsetBeyondIntRange() {
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> userService.findAll(Integer.MAX_VALUE, 20, ALL_FIELDS));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        verify(userRepository, never()).findViews(anyLong(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void parseFieldsDefaultsToAllAndRejectsUnknownNames() {
+        assertEquals(ALL_FIELDS, UserService.parseFields(null));
+        assertEquals(Set.of(UserViewDto.Field.ROLE), UserService.parseFields(" role "));
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> UserService.parseFields("username,password"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+    }
+
+    @Test
+    void parseFieldsRejectsAListNamingNoField() {
+        BusinessException ex = assertThrows(BusinessException.class, () -> UserService.parseFields(","));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+    }
+
+    private static DataIntegrityViolationException uniqueViolation(String constraint) {
+        SQLException sqlException = new SQLException(
+                "duplicate key value violates unique constraint \"" + constraint + "\" Key (email)=(alice@example.com)", "23505");
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", sqlException, constraint));
+    }
+
+    private static UserViewRepository.UserView viewWithId(long id) {
+        return new UserViewRepository.UserView(id, new UserViewDto("user" + id, "USER"));
+    }
 }
@@ -0,0 +1,42 @@
+package org.ecom.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void neverMissesAddedValuesAndStaysNearTargetFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertTrue(filter.expectedFalsePositiveRate() < 0.015);
+        // ~9.6 bits per value at 1%.
+        assertEquals(11_984, filter.memoryBytes());
+    }
+
+    @Test
+    void repeatedPutsDoNotCountAsInsertions() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+
+        assertTrue(filter.put("alice"));
+        assertFalse(filter.put("alice"));
+
+        assertEquals(1, filter.insertions());
+    }
+}
@@ -5,13 +5,20 @@ import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import org.ecom.config.JwtProperties;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Date;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 class JwtUtilTest {
 
@@ -25,7 +32,7 @@ class JwtUtilTest {
         properties.setPreviousSecrets(previous);
         properties.setExpirationMs(3600000L);
         properties.setRefreshExpirationMs(86400000L);
-        JwtUtil util = new JwtUtil(properties);
+        JwtUtil util = new JwtUtil(properties, new JwtKeyRing(properties));
 
         String currentToken = util.generateToken("alice", "USER");
         assertTrue(util.validate(currentToken));
@@ -43,4 +50,109 @@ class JwtUtilTest {
         assertEquals("bob", util.getUsername(previousToken));
         assertFalse(util.validate("not-a-jwt"));
     }
+
+    @Test
+    void parseDecodesAllClaimsOnce() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("01234567890123456789012345678901");
+        properties.setExpirationMs(3600000L);
+        properties.setRefreshExpirationMs(86400000L);
+        JwtUtil util = new JwtUtil(properties, new JwtKeyRing(properties));
+
+        ParsedToken issued = util.issueRefreshToken("alice", "USER", "sid-1", "fid-1");
+        ParsedToken parsed = util.parse(issued.getToken()).orElseThrow();
+
+        assertTrue(parsed.isRefreshToken());
+        assertEquals("alice", parsed.getUsername());
+        assertEquals("USER", parsed.getRole());
+        assertEquals("sid-1", parsed.getSessionId());
+        assertEquals("fid-1", parsed.getFamilyId());
+        assertEquals(issued.getIssuedAt(), parsed.getIssuedAt());
+        assertEquals(issued.getExpiration(), parsed.getExpiration());
+        assertTrue(util.parse("not-a-jwt").isEmpty());
+    }
+
+    @Test
+    void accessTokenNamesTheSessionItWasIssuedWith() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("01234567890123456789012345678901");
+        properties.setExpirationMs(3600000L);
+        properties.setRefreshExpirationMs(86400000L);
+        JwtUtil util = new JwtUtil(properties, new JwtKeyRing(properties));
+        ParsedToken refresh = util.issueRefreshToken("alice", "USER", "sid-1", "fid-1");
+
+        ParsedToken access = util.parse(util.generateToken("alice", "USER", refresh)).orElseThrow();
+
+        assertTrue(access.isAccessToken());
+        assertEquals("sid-1", access.getSessionId());
+        assertEquals(refresh.getExpiration(), access.getSessionExpiresAt());
+        assertNull(util.parse(util.generateToken("alice", "USER")).orElseThrow().getSessionExpiresAt());
+    }
+
+    @Test
+    void tokensCarryKidAndSurviveRotationUntilSecretIsDropped() {
+        String oldSecret = "01234567890123456789012345678901";
+        String newSecret = "abcdefghijklmnopqrstuvwxyz012345";
+
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret(oldSecret);
+        properties.setExpirationMs(3600000L);
+        properties.setRefreshExpirationMs(86400000L);
+        JwtKeyRing keyRing = new JwtKeyRing(properties);
+        JwtUtil util = new JwtUtil(properties, keyRing);
+
+        String token = util.generateToken("alice", "USER");
+        String kid = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(oldSecret.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseClaimsJws(token)
+                .getHeader()
+                .getKeyId();
+        assertEquals(JwtKeyRing.keyId(oldSecret), kid);
+
+        long generation = keyRing.generation();
+        keyRing.reload(newSecret, oldSecret);
+        assertTrue(keyRing.generation() > generation);
+        assertTrue(util.validate(token));
+        assertEquals(JwtKeyRing.keyId(newSecret), keyRing.signingKeyId());
+
+        keyRing.reload(newSecret, "");
+        assertFalse(util.validate(token));
+        assertTrue(util.validate(util.generateToken("bob", "USER")));
+    }
+
+    @Test
+    void reloadPicksUpRotatedKeysFile(@TempDir Path dir) throws Exception {
+        String oldSecret = "01234567890123456789012345678901";
+        String newSecret = "abcdefghijklmnopqrstuvwxyz012345";
+        Path keysFile = dir.resolve("jwt-keys");
+        Files.writeString(keysFile, oldSecret + "\n");
+
+        JwtProperties properties = new JwtProperties();
+        properties.setKeysFile(keysFile.toString());
+        properties.setExpirationMs(3600000L);
+        properties.setRefreshExpirationMs(86400000L);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        JwtKeyRing keyRing = new JwtKeyRing(properties, redisTemplate);
+        JwtUtil util = new JwtUtil(properties, keyRing);
+        String oldToken = util.generateToken("alice", "USER");
+
+        // Another node that already signs with the new secret.
+        JwtProperties peerProperties = new JwtProperties();
+        peerProperties.setSecret(newSecret);
+        peerProperties.setExpirationMs(3600000L);
+        peerProperties.setRefreshExpirationMs(86400000L);
+        String peerToken = new JwtUtil(peerProperties, new JwtKeyRing(peerProperties)).generateToken("bob", "USER");
+        assertFalse(util.validate(peerToken));
+
+        Files.writeString(keysFile, "# current first\n" + newSecret + "\n" + oldSecret + "\n");
+        keyRing.requestReload();
+
+        assertEquals(JwtKeyRing.keyId(newSecret), keyRing.signingKeyId());
+        assertTrue(util.validate(peerToken));
+        assertTrue(util.validate(oldToken));
+        assertTrue(util.validate(util.generateToken("carol", "USER")));
+        assertNull(properties.getSecret());
+        verify(redisTemplate).convertAndSend(JwtKeyRing.RELOAD_CHANNEL, "reload");
+    }
 }
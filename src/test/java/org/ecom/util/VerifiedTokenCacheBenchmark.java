@@ -0,0 +1,67 @@
+package org.ecom.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ecom.config.JwtProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+/**
+ * Before/after comparison for the bearer-token path of {@code JwtAuthFilter}: a full
+ * {@link JwtUtil#parse} (signature check and claim decoding) against a {@link VerifiedTokenCache}
+ * hit. Not part of the regular test run (surefire only picks up {@code *Test} classes); run it with
+ * {@code mvn -B test -Dtest=VerifiedTokenCacheBenchmark -Dsurefire.failIfNoSpecifiedTests=false}.
+ */
+class VerifiedTokenCacheBenchmark {
+
+    private static final int TOKENS = 1_000;
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void parseVersusCacheHit() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("01234567890123456789012345678901");
+        properties.setExpirationMs(3600000L);
+        properties.setRefreshExpirationMs(86400000L);
+        properties.setVerifiedCacheMaxSize(10_000);
+        JwtKeyRing keyRing = new JwtKeyRing(properties);
+        JwtUtil jwtUtil = new JwtUtil(properties, keyRing);
+        VerifiedTokenCache cache = new VerifiedTokenCache(jwtUtil, keyRing, properties, new SimpleMeterRegistry());
+
+        // Distinct users, as in production traffic; all fit in the cache.
+        String[] tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            tokens[i] = jwtUtil.generateToken("user" + i, "USER");
+        }
+        int[] next = {0};
+
+        double parse = nanosPerOp(() -> jwtUtil.parse(tokens[next[0]++ % TOKENS]).orElseThrow().getUsername().length());
+        double cached = nanosPerOp(() -> cache.get(tokens[next[0]++ % TOKENS]).orElseThrow().getUsername().length());
+
+        System.out.printf("JwtUtil.parse: %.0f ns/op, VerifiedTokenCache hit: %.0f ns/op (%.1fx), hit rate %.4f%n",
+                parse, cached, parse / cached, cache.stats().hitRate());
+    }
+
+    private static double nanosPerOp(IntSupplier op) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += op.getAsInt();
+        }
+        double[] rounds = new double[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += op.getAsInt();
+            }
+            rounds[r] = (System.nanoTime() - start) / (double) ITERATIONS;
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+}
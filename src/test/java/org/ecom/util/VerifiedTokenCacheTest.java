@@ -0,0 +1,61 @@
+package org.ecom.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ecom.config.JwtProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class VerifiedTokenCacheTest {
+
+    private static final String SECRET = "01234567890123456789012345678901";
+
+    private JwtProperties properties() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret(SECRET);
+        properties.setExpirationMs(3600000L);
+        properties.setRefreshExpirationMs(86400000L);
+        properties.setVerifiedCacheMaxSize(100);
+        return properties;
+    }
+
+    @Test
+    void repeatedTokenIsVerifiedOnce() {
+        JwtProperties properties = properties();
+        JwtKeyRing keyRing = new JwtKeyRing(properties);
+        JwtUtil jwtUtil = spy(new JwtUtil(properties, keyRing));
+        VerifiedTokenCache cache = new VerifiedTokenCache(jwtUtil, keyRing, properties, new SimpleMeterRegistry());
+
+        String token = jwtUtil.generateToken("alice", "USER");
+        for (int i = 0; i < 5; i++) {
+            ParsedToken parsed = cache.get(token).orElseThrow();
+            assertEquals("alice", parsed.getUsername());
+            assertNull(parsed.getToken());
+        }
+
+        verify(jwtUtil, times(1)).parse(token);
+        assertEquals(4, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void keyRingReloadForcesReverification() {
+        JwtProperties properties = properties();
+        JwtKeyRing keyRing = new JwtKeyRing(properties);
+        JwtUtil jwtUtil = new JwtUtil(properties, keyRing);
+        VerifiedTokenCache cache = new VerifiedTokenCache(jwtUtil, keyRing, properties, new SimpleMeterRegistry());
+
+        String token = jwtUtil.generateToken("alice", "USER");
+        assertTrue(cache.get(token).isPresent());
+
+        keyRing.reload("abcdefghijklmnopqrstuvwxyz012345", "");
+
+        assertTrue(cache.get(token).isEmpty());
+        assertTrue(cache.get("not-a-jwt").isEmpty());
+    }
+}